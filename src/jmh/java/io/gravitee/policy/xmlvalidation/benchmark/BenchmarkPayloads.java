@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Payloads shared by the benchmarks: lists of companies, valid against every {@link SchemaComplexity}.
+ *
+ * @author GraviteeSource Team
+ */
+final class BenchmarkPayloads {
+
+    private BenchmarkPayloads() {
+    }
+
+    /**
+     * @return a document of roughly {@code size} bytes. An invalid document only breaks the schema in its last company,
+     * so the whole payload has to be read before it is rejected.
+     */
+    static byte[] payload(int size, boolean valid) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<root>\n    <companies>\n");
+        int index = 0;
+        do {
+            sb.append("        <company id=\"c").append(index).append("\">\n")
+                    .append("            <name>Company ").append(index).append("</name>\n")
+                    .append("            <employeeNumber>752</employeeNumber>\n")
+                    .append("            <sales>10451541505</sales>\n")
+                    .append("            <CEO>John Doo</CEO>\n")
+                    .append("        </company>\n");
+            index++;
+        } while (sb.length() < size - 32);
+
+        if (!valid) {
+            int last = sb.lastIndexOf("<employeeNumber>752</employeeNumber>");
+            sb.replace(last, last + "<employeeNumber>752</employeeNumber>".length(), "<employeeNumber>abc</employeeNumber>");
+        }
+        sb.append("    </companies>\n</root>\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[][] split(byte[] payload, int chunks) {
+        int chunkSize = Math.max(1, (payload.length + chunks - 1) / chunks);
+        int count = (payload.length + chunkSize - 1) / chunkSize;
+        byte[][] result = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            result[i] = Arrays.copyOfRange(payload, i * chunkSize, Math.min(payload.length, (i + 1) * chunkSize));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.benchmark;
+
+/**
+ * Schemas used by the benchmarks. The {@code COMPLEX} schema adds facets, a required ID attribute and an identity
+ * constraint on top of the {@code SIMPLE} one.
+ *
+ * @author GraviteeSource Team
+ */
+public enum SchemaComplexity {
+    SIMPLE(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" elementFormDefault=\"qualified\">\n" +
+            "    <xs:element name=\"root\">\n" +
+            "        <xs:complexType>\n" +
+            "            <xs:sequence>\n" +
+            "                <xs:element name=\"companies\">\n" +
+            "                    <xs:complexType>\n" +
+            "                        <xs:sequence>\n" +
+            "                            <xs:element name=\"company\" type=\"companyType\" minOccurs=\"0\" maxOccurs=\"unbounded\"/>\n" +
+            "                        </xs:sequence>\n" +
+            "                    </xs:complexType>\n" +
+            "                </xs:element>\n" +
+            "            </xs:sequence>\n" +
+            "        </xs:complexType>\n" +
+            "    </xs:element>\n" +
+            "    <xs:complexType name=\"companyType\">\n" +
+            "        <xs:sequence>\n" +
+            "            <xs:element name=\"name\" type=\"xs:string\"/>\n" +
+            "            <xs:element name=\"employeeNumber\" type=\"xs:integer\"/>\n" +
+            "            <xs:element name=\"sales\" type=\"xs:long\"/>\n" +
+            "            <xs:element name=\"CEO\" type=\"xs:string\"/>\n" +
+            "        </xs:sequence>\n" +
+            "        <xs:attribute name=\"id\" type=\"xs:string\"/>\n" +
+            "    </xs:complexType>\n" +
+            "</xs:schema>"),
+
+    COMPLEX(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" elementFormDefault=\"qualified\">\n" +
+            "    <xs:element name=\"root\">\n" +
+            "        <xs:complexType>\n" +
+            "            <xs:sequence>\n" +
+            "                <xs:element name=\"companies\">\n" +
+            "                    <xs:complexType>\n" +
+            "                        <xs:sequence>\n" +
+            "                            <xs:element name=\"company\" type=\"companyType\" minOccurs=\"0\" maxOccurs=\"unbounded\"/>\n" +
+            "                        </xs:sequence>\n" +
+            "                    </xs:complexType>\n" +
+            "                    <xs:unique name=\"uniqueCompanyName\">\n" +
+            "                        <xs:selector xpath=\"company\"/>\n" +
+            "                        <xs:field xpath=\"name\"/>\n" +
+            "                    </xs:unique>\n" +
+            "                </xs:element>\n" +
+            "            </xs:sequence>\n" +
+            "        </xs:complexType>\n" +
+            "    </xs:element>\n" +
+            "    <xs:simpleType name=\"nameType\">\n" +
+            "        <xs:restriction base=\"xs:string\">\n" +
+            "            <xs:pattern value=\"[A-Za-z0-9 ]+\"/>\n" +
+            "            <xs:maxLength value=\"64\"/>\n" +
+            "        </xs:restriction>\n" +
+            "    </xs:simpleType>\n" +
+            "    <xs:simpleType name=\"employeeNumberType\">\n" +
+            "        <xs:restriction base=\"xs:int\">\n" +
+            "            <xs:minInclusive value=\"1\"/>\n" +
+            "            <xs:maxInclusive value=\"1000000\"/>\n" +
+            "        </xs:restriction>\n" +
+            "    </xs:simpleType>\n" +
+            "    <xs:simpleType name=\"salesType\">\n" +
+            "        <xs:restriction base=\"xs:long\">\n" +
+            "            <xs:minInclusive value=\"0\"/>\n" +
+            "        </xs:restriction>\n" +
+            "    </xs:simpleType>\n" +
+            "    <xs:complexType name=\"companyType\">\n" +
+            "        <xs:sequence>\n" +
+            "            <xs:element name=\"name\" type=\"nameType\"/>\n" +
+            "            <xs:element name=\"employeeNumber\" type=\"employeeNumberType\"/>\n" +
+            "            <xs:element name=\"sales\" type=\"salesType\"/>\n" +
+            "            <xs:choice>\n" +
+            "                <xs:element name=\"CEO\" type=\"nameType\"/>\n" +
+            "                <xs:element name=\"board\" type=\"xs:string\"/>\n" +
+            "            </xs:choice>\n" +
+            "        </xs:sequence>\n" +
+            "        <xs:attribute name=\"id\" type=\"xs:ID\" use=\"required\"/>\n" +
+            "    </xs:complexType>\n" +
+            "</xs:schema>");
+
+    private final String xsd;
+
+    SchemaComplexity(String xsd) {
+        this.xsd = xsd;
+    }
+
+    String xsd() {
+        return xsd;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.benchmark;
+
+import io.gravitee.policy.xmlvalidation.configuration.ValidationEngineType;
+import io.gravitee.policy.xmlvalidation.schema.CompiledSchema;
+import io.gravitee.policy.xmlvalidation.schema.JaxpValidationEngine;
+import io.gravitee.policy.xmlvalidation.schema.SchemaCache;
+import io.gravitee.policy.xmlvalidation.schema.ValidationEngine;
+import io.gravitee.policy.xmlvalidation.schema.ValidationErrorHandler;
+import io.gravitee.policy.xmlvalidation.schema.WoodstoxValidationEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link ValidationEngine} implementations on a buffered payload, without the policy around them, to
+ * choose the engine of a given schema profile.
+ *
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=ValidationEngineBenchmark}.
+ *
+ * @author GraviteeSource Team
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidationEngineBenchmark {
+
+    @Param({"JAXP", "WOODSTOX"})
+    public ValidationEngineType engineType;
+
+    @Param({"1024", "102400", "1048576", "10485760"})
+    public int payloadSize;
+
+    @Param({"SIMPLE", "COMPLEX"})
+    public SchemaComplexity schemaComplexity;
+
+    @Param({"true", "false"})
+    public boolean valid;
+
+    private ValidationEngine engine;
+
+    private CompiledSchema schema;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SAXException {
+        engine = engineType == ValidationEngineType.WOODSTOX ?
+                WoodstoxValidationEngine.getInstance() : JaxpValidationEngine.getInstance();
+        schema = SchemaCache.getInstance().get(schemaComplexity.xsd());
+        engine.prepare(schema);
+        payload = BenchmarkPayloads.payload(payloadSize, valid);
+    }
+
+    @Benchmark
+    public boolean validate() throws IOException {
+        try {
+            engine.validate(schema, new ByteArrayInputStream(payload), new ValidationErrorHandler());
+            return true;
+        } catch (SAXException e) {
+            return false;
+        }
+    }
+}
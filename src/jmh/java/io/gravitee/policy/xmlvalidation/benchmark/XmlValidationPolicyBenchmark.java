@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.benchmark;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.gateway.api.Request;
+import io.gravitee.gateway.api.Response;
+import io.gravitee.gateway.api.buffer.Buffer;
+import io.gravitee.gateway.api.stream.ReadWriteStream;
+import io.gravitee.policy.api.PolicyChain;
+import io.gravitee.policy.api.PolicyResult;
+import io.gravitee.policy.xmlvalidation.XmlValidationPolicy;
+import io.gravitee.policy.xmlvalidation.configuration.XmlValidationPolicyConfiguration;
+import io.gravitee.reporter.api.http.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end benchmark of {@link XmlValidationPolicy#onRequestContent(Request, Response, ExecutionContext, PolicyChain)}
+ * with a stubbed request and policy chain.
+ *
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec}. The thread count is set with JMH {@code -t} option, and the
+ * allocation rate is reported by the GC profiler enabled by default in the {@code benchmark} profile.
+ *
+ * @author GraviteeSource Team
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlValidationPolicyBenchmark {
+
+    private static final int INVALID_SLOTS = 10;
+
+    @Param({"1024", "102400", "1048576", "10485760"})
+    public int payloadSize;
+
+    @Param({"SIMPLE", "COMPLEX"})
+    public SchemaComplexity schemaComplexity;
+
+    @Param({"1", "16", "256"})
+    public int chunks;
+
+    @Param({"0", "0.1"})
+    public double invalidRatio;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private XmlValidationPolicyConfiguration configuration;
+
+    private byte[][] validChunks;
+
+    private byte[][] invalidChunks;
+
+    private ExecutionContext executionContext;
+
+    private PolicyChain policyChain;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        configuration = new XmlValidationPolicyConfiguration();
+        configuration.setXsdSchema(schemaComplexity.xsd());
+        configuration.setStreaming(streaming);
+
+        validChunks = BenchmarkPayloads.split(BenchmarkPayloads.payload(payloadSize, true), chunks);
+        invalidChunks = BenchmarkPayloads.split(BenchmarkPayloads.payload(payloadSize, false), chunks);
+
+        executionContext = stub(ExecutionContext.class, null);
+        policyChain = new PolicyChain() {
+            @Override
+            public void doNext(Request request, Response response) {
+            }
+
+            @Override
+            public void failWith(PolicyResult policyResult) {
+            }
+
+            @Override
+            public void streamFailWith(PolicyResult policyResult) {
+            }
+        };
+    }
+
+    @State(Scope.Thread)
+    public static class RequestState {
+
+        private int sequence;
+
+        private Request request;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Metrics metrics = Metrics.on(System.currentTimeMillis()).build();
+            request = stub(Request.class, metrics);
+        }
+
+        boolean nextIsValid(double invalidRatio) {
+            sequence = (sequence + 1) % INVALID_SLOTS;
+            return sequence >= Math.round(invalidRatio * INVALID_SLOTS);
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public void onRequestContent(RequestState state, Blackhole blackhole) {
+        byte[][] payload = state.nextIsValid(invalidRatio) ? validChunks : invalidChunks;
+
+        XmlValidationPolicy policy = new XmlValidationPolicy(configuration);
+        ReadWriteStream<Buffer> stream = policy.onRequestContent(state.request, null, executionContext, policyChain);
+        stream.bodyHandler(blackhole::consume);
+        for (byte[] chunk : payload) {
+            stream.write(Buffer.buffer(chunk));
+        }
+        stream.end();
+    }
+
+    /**
+     * Lightweight stub answering the request id and metrics, and {@code null} for everything else.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Metrics metrics) {
+        return (T) Proxy.newProxyInstance(XmlValidationPolicyBenchmark.class.getClassLoader(), new Class[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "id":
+                            return "benchmark";
+                        case "metrics":
+                            return metrics;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
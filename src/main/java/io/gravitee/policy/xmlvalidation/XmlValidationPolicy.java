@@ -15,6 +15,7 @@
  */
 package io.gravitee.policy.xmlvalidation;
 
+import io.gravitee.common.http.HttpHeaders;
 import io.gravitee.common.http.HttpStatusCode;
 import io.gravitee.common.http.MediaType;
 import io.gravitee.gateway.api.ExecutionContext;
@@ -27,19 +28,56 @@ import io.gravitee.gateway.api.stream.SimpleReadWriteStream;
 import io.gravitee.policy.api.PolicyChain;
 import io.gravitee.policy.api.PolicyResult;
 import io.gravitee.policy.api.annotations.OnRequestContent;
+import io.gravitee.policy.api.annotations.OnResponseContent;
+import io.gravitee.policy.xmlvalidation.configuration.ExecutionMode;
+import io.gravitee.policy.xmlvalidation.configuration.SchemaCatalogEntry;
+import io.gravitee.policy.xmlvalidation.configuration.SchemaMapping;
+import io.gravitee.policy.xmlvalidation.configuration.ValidationEngineType;
+import io.gravitee.policy.xmlvalidation.configuration.ValidationMode;
 import io.gravitee.policy.xmlvalidation.configuration.XmlValidationPolicyConfiguration;
+import io.gravitee.policy.xmlvalidation.executor.ValidationExecutor;
+import io.gravitee.policy.xmlvalidation.metrics.FailureReason;
+import io.gravitee.policy.xmlvalidation.metrics.ValidationRecorder;
+import io.gravitee.policy.xmlvalidation.metrics.XmlValidationMetrics;
+import io.gravitee.policy.xmlvalidation.schema.BatchValidationException;
+import io.gravitee.policy.xmlvalidation.schema.BatchValidator;
+import io.gravitee.policy.xmlvalidation.schema.CompiledSchema;
+import io.gravitee.policy.xmlvalidation.schema.InvalidSchemaException;
+import io.gravitee.policy.xmlvalidation.schema.JaxpValidationEngine;
+import io.gravitee.policy.xmlvalidation.schema.RoutingContentHandler;
+import io.gravitee.policy.xmlvalidation.schema.SchemaCache;
+import io.gravitee.policy.xmlvalidation.schema.SchemaCatalog;
+import io.gravitee.policy.xmlvalidation.schema.SchemaFileWatcher;
+import io.gravitee.policy.xmlvalidation.schema.SchemaLookup;
+import io.gravitee.policy.xmlvalidation.schema.SchemaRouter;
+import io.gravitee.policy.xmlvalidation.schema.ValidationEngine;
+import io.gravitee.policy.xmlvalidation.schema.ValidationErrorHandler;
+import io.gravitee.policy.xmlvalidation.schema.VerdictCache;
+import io.gravitee.policy.xmlvalidation.schema.WoodstoxValidationEngine;
+import io.gravitee.policy.xmlvalidation.stream.AsyncXmlParser;
+import io.gravitee.policy.xmlvalidation.stream.Buffers;
+import io.gravitee.policy.xmlvalidation.stream.FragmentContentHandler;
+import io.gravitee.policy.xmlvalidation.stream.LimitExceededException;
+import io.gravitee.policy.xmlvalidation.stream.PayloadInflater;
+import io.gravitee.policy.xmlvalidation.stream.RootElement;
+import io.gravitee.policy.xmlvalidation.stream.SpillBuffer;
+import io.gravitee.policy.xmlvalidation.stream.UnsupportedXmlEncodingException;
+import io.gravitee.policy.xmlvalidation.stream.XmlLimits;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
-import javax.xml.XMLConstants;
-import javax.xml.transform.Source;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
+import javax.xml.namespace.QName;
+import javax.xml.validation.ValidatorHandler;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 public class XmlValidationPolicy {
@@ -48,53 +86,820 @@ public class XmlValidationPolicy {
 
     private final static String BAD_REQUEST = "Bad Request";
     private final static String INTERNAL_ERROR = "Internal Error";
+    private final static String SERVICE_UNAVAILABLE = "Service Unavailable";
+
+    public static final String WARMUP_ITERATIONS_PROPERTY = "gravitee.policy.xml-validation.warmup.iterations";
+
+    private static final int WARMUP_ITERATIONS = Integer.getInteger(WARMUP_ITERATIONS_PROPERTY, 100);
+
+    public static final String SHADOW_MAX_SIZE_PROPERTY = "gravitee.policy.xml-validation.shadow.max-size";
+
+    private static final long SHADOW_MAX_SIZE = Long.getLong(SHADOW_MAX_SIZE_PROPERTY, 10 * 1024 * 1024);
 
     private XmlValidationPolicyConfiguration configuration;
 
+    private final SchemaCatalog catalog;
+
+    private final ValidationEngine engine;
+
+    private final List<QName> fragmentPath;
+
+    private final Payload requestPayload;
+
+    private final Payload responsePayload;
+
+    /**
+     * Compiles the XSD schemas, or gets them from the cache, so that an invalid schema is reported as soon as the policy
+     * is created.
+     *
+     * @throws IllegalArgumentException if the XSD schema is missing or does not compile, or if the batch path is
+     * combined with an incompatible option.
+     */
     public XmlValidationPolicy(XmlValidationPolicyConfiguration jsonSchemaValidatorPolicyConfiguration) {
         this.configuration = jsonSchemaValidatorPolicyConfiguration;
+        this.catalog = schemaCatalog();
+        this.engine = configuration.getEngine() == ValidationEngineType.WOODSTOX ?
+                WoodstoxValidationEngine.getInstance() : JaxpValidationEngine.getInstance();
+        this.fragmentPath = isEmpty(configuration.getFragmentPath()) ? null :
+                FragmentContentHandler.parsePath(configuration.getFragmentPath());
+        List<QName> batchPath = isEmpty(configuration.getBatchPath()) ? null :
+                FragmentContentHandler.parsePath(configuration.getBatchPath());
+
+        if (batchPath != null && (configuration.isStreaming() || fragmentPath != null
+                || configuration.getValidationMode() == ValidationMode.WELL_FORMED)) {
+            throw new IllegalArgumentException("A batch path can not be combined with streaming, a fragment path or the WELL_FORMED validation mode");
+        }
+
+        if (configuration.getValidationMode() == ValidationMode.WELL_FORMED) {
+            this.requestPayload = new Payload(null, null, false);
+        } else {
+            this.requestPayload = new Payload(requestSchemaRouter(), batchPath, false);
+        }
+
+        String responseXsdSchema = configuration.getResponseXsdSchema();
+        if (isEmpty(responseXsdSchema)) {
+            this.responsePayload = null;
+        } else {
+            this.responsePayload = new Payload(new SchemaRouter(compileSchema(responseXsdSchema, null)), null, true);
+        }
+    }
+
+    private SchemaCatalog schemaCatalog() {
+        List<SchemaCatalogEntry> entries = configuration.getSchemaCatalog();
+        if (entries == null || entries.isEmpty()) {
+            return SchemaCatalog.EMPTY;
+        }
+
+        Map<String, String> locations = new HashMap<>();
+        Map<String, String> namespaces = new HashMap<>();
+        for (SchemaCatalogEntry entry : entries) {
+            if (isEmpty(entry.getXsdSchema())) {
+                throw new IllegalArgumentException("An XSD schema is required for each schema catalog entry");
+            }
+            if (isEmpty(entry.getLocation()) && entry.getNamespace() == null) {
+                throw new IllegalArgumentException("A location or a namespace is required for each schema catalog entry");
+            }
+            if (!isEmpty(entry.getLocation())) {
+                locations.put(entry.getLocation().trim(), entry.getXsdSchema());
+            }
+            if (entry.getNamespace() != null) {
+                namespaces.put(entry.getNamespace().trim(), entry.getXsdSchema());
+            }
+        }
+        return new SchemaCatalog(locations, namespaces);
+    }
+
+    private SchemaRouter requestSchemaRouter() {
+        String xsdSchema = configuration.getXsdSchema();
+        String xsdSchemaFile = configuration.getXsdSchemaFile();
+        List<SchemaMapping> mappings = configuration.getSchemaMappings();
+        if (isEmpty(xsdSchema) && isEmpty(xsdSchemaFile) && (mappings == null || mappings.isEmpty())) {
+            throw new IllegalArgumentException("An XSD schema or schema mappings are required in SCHEMA validation mode");
+        }
+        if (!isEmpty(xsdSchema) && !isEmpty(xsdSchemaFile)) {
+            throw new IllegalArgumentException("An XSD schema and an XSD schema file can not be both set");
+        }
+
+        SchemaRouter router;
+        if (!isEmpty(xsdSchemaFile)) {
+            // The route is read again for each payload, so that a reloaded schema applies to the next payloads
+            router = new SchemaRouter(watchSchemaFile(xsdSchemaFile)::getRoute);
+        } else {
+            router = new SchemaRouter(isEmpty(xsdSchema) ? null : compileSchema(xsdSchema, configuration.getWarmupSample()));
+        }
+        if (mappings != null) {
+            for (SchemaMapping mapping : mappings) {
+                if (isEmpty(mapping.getXsdSchema())) {
+                    throw new IllegalArgumentException("An XSD schema is required for each schema mapping");
+                }
+                if (!isEmpty(mapping.getRootElement())) {
+                    router.mapRootElement(QName.valueOf(mapping.getRootElement().trim()), compileSchema(mapping.getXsdSchema(), null));
+                } else if (mapping.getNamespace() != null) {
+                    router.mapNamespace(mapping.getNamespace().trim(), compileSchema(mapping.getXsdSchema(), null));
+                } else {
+                    throw new IllegalArgumentException("A root element or a namespace is required for each schema mapping");
+                }
+            }
+        }
+        return router;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private SchemaFileWatcher.WatchedSchema watchSchemaFile(String xsdSchemaFile) {
+        try {
+            return SchemaFileWatcher.getInstance().watch(xsdSchemaFile.trim(), engine);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to read XSD schema file " + xsdSchemaFile.trim() + ": " + e.getMessage(), e);
+        } catch (SAXException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    private SchemaRouter.Route compileSchema(String xsdSchema, String sample) {
+        SchemaLookup lookup = new SchemaLookup();
+        CompiledSchema compiledSchema;
+        try {
+            compiledSchema = SchemaCache.getInstance().get(xsdSchema, catalog, lookup);
+            engine.prepare(compiledSchema);
+        } catch (SAXException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+
+        if (sample != null && !sample.isEmpty()) {
+            // Off the request path, since the policy is created for the request being processed
+            compiledSchema.warmUp(sample, WARMUP_ITERATIONS, ValidationExecutor.getInstance());
+        }
+        return new SchemaRouter.Route(compiledSchema, lookup);
     }
 
     @OnRequestContent
     public ReadWriteStream onRequestContent(Request request, Response response, ExecutionContext executionContext, PolicyChain policyChain) {
         logger.debug("Execute XML validation policy on request {}", request.id());
+        return validation(request, executionContext, policyChain, requestPayload, contentEncoding(request.headers()));
+    }
+
+    /**
+     * Validates the response payload against the response XSD schema, if any, for the configured share of responses.
+     * Other responses are not buffered nor parsed.
+     */
+    @OnResponseContent
+    public ReadWriteStream onResponseContent(Request request, Response response, ExecutionContext executionContext, PolicyChain policyChain) {
+        if (responsePayload == null || !sampled(configuration.getResponseSamplingRate())) {
+            return null;
+        }
+        logger.debug("Execute XML validation policy on response {}", request.id());
+        return validation(request, executionContext, policyChain, responsePayload, contentEncoding(response.headers()));
+    }
+
+    private static boolean sampled(double rate) {
+        return rate >= 100 || (rate > 0 && ThreadLocalRandom.current().nextDouble(100) < rate);
+    }
+
+    /**
+     * @return the encoding of a compressed payload, or {@code null} if the payload is not compressed.
+     */
+    private static String contentEncoding(HttpHeaders headers) {
+        String contentEncoding = headers == null ? null : headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        return contentEncoding == null || contentEncoding.trim().isEmpty() || "identity".equalsIgnoreCase(contentEncoding.trim()) ?
+                null : contentEncoding;
+    }
+
+    /**
+     * @param contentEncoding encoding of a compressed payload, which is then inflated while it is received, and passed
+     *                        through compressed.
+     */
+    private ReadWriteStream validation(Request request, ExecutionContext executionContext, PolicyChain policyChain,
+                                       Payload payload, String contentEncoding) {
+        if (configuration.isShadow()) {
+            return shadowValidation(request, payload, contentEncoding);
+        }
+        ValidationRecorder recorder = new ValidationRecorder(executionContext,
+                payload.response ? ValidationRecorder.RESPONSE_ATTR_PREFIX : ValidationRecorder.ATTR_PREFIX);
+        if (payload.router != null && payload.router.isSingle()) {
+            payload.router.getDefault().getLookup().replay(recorder);
+        }
+        // Batch payloads are always buffered to be split, and inflated as a whole once received if they are compressed
+        if (configuration.isStreaming() || payload.router == null || fragmentPath != null
+                || (contentEncoding != null && payload.batchPath == null)) {
+            return incrementalValidation(request, executionContext, policyChain, payload, recorder, contentEncoding);
+        }
+        XmlLimits limits = limits();
         return new BufferedReadWriteStream() {
 
-            Buffer buffer = Buffer.buffer();
+            SpillBuffer buffer = new SpillBuffer(configuration.getSpillThreshold());
+
+            // Structural limits are checked by a lightweight parsing pass while the payload is received, or while a
+            // compressed payload is inflated
+            AsyncXmlParser parser = limits.isEnabled() && contentEncoding == null ? new AsyncXmlParser(null, limits) : null;
+
+            // The payload is hashed while it is received, to look its verdict up once complete
+            MessageDigest digest = configuration.isVerdictCache() && payload.batchPath == null ? VerdictCache.payloadDigest() : null;
+
+            String schemaDigest;
+
+            String payloadDigest;
+
+            boolean failed;
 
             @Override
             public SimpleReadWriteStream<Buffer> write(Buffer content) {
-                buffer.appendBuffer(content);
+                if (!failed) {
+                    try {
+                        checkBodySize(buffer.length() + content.length());
+                        if (parser != null) {
+                            long start = recorder.start();
+                            try {
+                                Buffers.consume(content, parser::feed);
+                            } finally {
+                                recorder.stop(start);
+                            }
+                        }
+                        if (digest != null) {
+                            Buffers.consume(content, digest::update);
+                        }
+                        buffer.append(content);
+                    } catch (Exception e) {
+                        failed = true;
+                        buffer.release();
+                        fail(request, executionContext, policyChain, payload, recorder, e, null);
+                    }
+                }
                 return this;
             }
 
             @Override
             public void end() {
-                //Schema factory is not thread safe
-                SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-                Source xsd = new StreamSource(new StringReader(configuration.getXsdSchema()));
-                Source xml = new StreamSource(new StringReader(buffer.toString()));
+                if (failed) {
+                    return;
+                }
+                if (parser != null) {
+                    try {
+                        parser.end();
+                    } catch (SAXException e) {
+                        buffer.release();
+                        fail(request, executionContext, policyChain, payload, recorder, e, null);
+                        return;
+                    }
+                }
+
+                ValidationErrorHandler errorHandler = new ValidationErrorHandler();
+                CompiledSchema schema;
                 try {
-                    Schema schema = schemaFactory.newSchema(xsd);
-                    Validator validator = schema.newValidator();
-                    validator.validate(xml);
-                    super.write(buffer);
-                    super.end();
-                } catch (SAXException | IOException e) {
-                    request.metrics().setMessage(e.getMessage());
-                    sendErrorResponse(executionContext, policyChain, HttpStatusCode.BAD_REQUEST_400);
+                    // The items of a batch payload are routed one by one
+                    schema = payload.batchPath == null ? schema(payload.router, buffer, errorHandler, recorder) : null;
+                } catch (SAXException e) {
+                    buffer.release();
+                    fail(request, executionContext, policyChain, payload, recorder, e, errorHandler);
+                    return;
+                }
+
+                if (digest != null) {
+                    schemaDigest = schema.getDigest();
+                    payloadDigest = VerdictCache.toString(digest);
+                    VerdictCache.Verdict verdict = VerdictCache.getInstance().get(engine, schemaDigest, payloadDigest);
+                    recorder.verdictCache(verdict != null);
+                    if (verdict != null) {
+                        recorder.bytes(buffer.length());
+                        complete(verdict.isValid() ? null : verdict.failure(errorHandler), errorHandler);
+                        return;
+                    }
+                }
+
+                // A batch payload waits for its items, which must not block the event loop
+                if (configuration.getExecutionMode() == ExecutionMode.WORKER || payload.batchPath != null) {
+                    boolean accepted = ValidationExecutor.getInstance().execute(() -> {
+                        if (contentEncoding != null) {
+                            validateCompressed(payload, buffer, contentEncoding, limits, errorHandler, recorder);
+                        } else {
+                            validate(payload, schema, buffer, errorHandler, recorder);
+                        }
+                        return null;
+                    }, (result, failure) -> {
+                        cache(failure, errorHandler);
+                        complete(failure, errorHandler);
+                    });
+
+                    if (!accepted) {
+                        buffer.release();
+                        rejectOverloaded(request, executionContext, policyChain);
+                    }
+                } else {
+                    Exception failure = null;
+                    try {
+                        validate(payload, schema, buffer, errorHandler, recorder);
+                    } catch (Exception e) {
+                        failure = e;
+                    }
+                    cache(failure, errorHandler);
+                    complete(failure, errorHandler);
+                }
+            }
+
+            /**
+             * Caches the verdict of a validated payload, unless it failed for a reason unrelated to the payload.
+             */
+            private void cache(Exception failure, ValidationErrorHandler errorHandler) {
+                if (payloadDigest == null) {
+                    return;
+                }
+                if (failure == null) {
+                    VerdictCache.getInstance().put(engine, schemaDigest, payloadDigest, VerdictCache.Verdict.valid());
+                } else if (failure instanceof SAXException && !(failure instanceof InvalidSchemaException)) {
+                    VerdictCache.getInstance().put(engine, schemaDigest, payloadDigest, VerdictCache.Verdict.invalid((SAXException) failure, errorHandler));
+                }
+            }
+
+            private void complete(Exception failure, ValidationErrorHandler errorHandler) {
+                try {
+                    if (failure == null) {
+                        recorder.succeeded();
+                        buffer.writeTo(super::write);
+                        super.end();
+                    } else {
+                        fail(request, executionContext, policyChain, payload, recorder, failure, errorHandler);
+                    }
+                } finally {
+                    buffer.release();
                 }
             }
         };
     }
 
+    /**
+     * @return the schema of the buffered payload, reading its root element beforehand if several schemas are mapped.
+     */
+    private static CompiledSchema schema(SchemaRouter router, SpillBuffer buffer, ValidationErrorHandler errorHandler,
+                                         ValidationRecorder recorder) throws SAXException {
+        if (router.isSingle()) {
+            return router.getDefault().getSchema();
+        }
+
+        SchemaRouter.Route route;
+        long start = recorder.start();
+        try {
+            route = router.route(RootElement.of(buffer.inputStream()), errorHandler);
+        } finally {
+            recorder.stop(start);
+        }
+        route.getLookup().replay(recorder);
+        return route.getSchema();
+    }
+
+    /**
+     * @param schema the schema of the payload, or {@code null} for a batch payload, whose items are validated in
+     *               parallel against their own schema.
+     */
+    private void validate(Payload payload, CompiledSchema schema, SpillBuffer buffer, ValidationErrorHandler errorHandler,
+                          ValidationRecorder recorder) throws SAXException, IOException {
+        long start = recorder.start();
+        try (InputStream xml = buffer.inputStream()) {
+            if (payload.batchPath != null) {
+                new BatchValidator(payload.router, engine, ValidationExecutor.getBatchInstance())
+                        .validate(xml, payload.batchPath, errorHandler);
+            } else {
+                engine.validate(schema, xml, errorHandler);
+            }
+        } finally {
+            recorder.stop(start);
+            recorder.bytes(buffer.length());
+        }
+    }
+
+    /**
+     * Validates the whole compressed payload once received, against the schema of its root element or, for a batch
+     * payload, against the schemas of its items.
+     */
+    private void validateCompressed(Payload payload, SpillBuffer buffer, String contentEncoding, XmlLimits limits,
+                                    ValidationErrorHandler errorHandler, ValidationRecorder recorder) throws SAXException, IOException {
+        SpillBuffer inflated = inflate(buffer, contentEncoding, limits, recorder);
+        try {
+            validate(payload, payload.batchPath == null ? schema(payload.router, inflated, errorHandler, recorder) : null,
+                    inflated, errorHandler, recorder);
+        } finally {
+            inflated.release();
+        }
+    }
+
+    /**
+     * @return an inflated copy of the whole compressed payload, whose structural limits have been checked.
+     */
+    private SpillBuffer inflate(SpillBuffer content, String contentEncoding, XmlLimits limits, ValidationRecorder recorder)
+            throws SAXException {
+        SpillBuffer inflated = new SpillBuffer(configuration.getSpillThreshold());
+        PayloadInflater inflater = PayloadInflater.of(contentEncoding, configuration.getMaxInflationRatio());
+        AsyncXmlParser parser = limits.isEnabled() ? new AsyncXmlParser(null, limits) : null;
+        long start = recorder.start();
+        try {
+            content.consume((bytes, offset, length) -> inflater.inflate(bytes, offset, length, (chunk, chunkOffset, chunkLength) -> {
+                if (parser != null) {
+                    parser.feed(chunk, chunkOffset, chunkLength);
+                }
+                inflated.append(chunk, chunkOffset, chunkLength);
+            }));
+            inflater.end();
+            if (parser != null) {
+                parser.end();
+            }
+            return inflated;
+        } catch (SAXException | RuntimeException e) {
+            inflated.release();
+            throw e;
+        } finally {
+            recorder.stop(start);
+            inflater.release();
+        }
+    }
+
+    /**
+     * Validates the payload while it is received: each chunk is parsed and validated as soon as it arrives, and the
+     * payload is rejected on the first chunk which breaks the schema.
+     *
+     * In streaming mode, each chunk is passed to the chain once it has been validated. Otherwise chunks are held until
+     * the whole payload has been validated. In {@link ExecutionMode#WORKER} mode, the held payload is only parsed, and
+     * inflated, once complete, on the worker pool instead of the event loop.
+     *
+     * A held compressed payload whose encoding the non-blocking parser does not support is validated as a whole once
+     * received instead, as an uncompressed payload would be.
+     */
+    private ReadWriteStream incrementalValidation(Request request, ExecutionContext executionContext, PolicyChain policyChain,
+                                                  Payload payload, ValidationRecorder recorder, String contentEncoding) {
+        ValidationErrorHandler errorHandler = new ValidationErrorHandler();
+        boolean streaming = configuration.isStreaming();
+        boolean worker = !streaming && configuration.getExecutionMode() == ExecutionMode.WORKER;
+        boolean wholeFallback = !streaming && canValidateWhole(payload, contentEncoding);
+        XmlLimits limits = limits();
+        return new BufferedReadWriteStream() {
+
+            SpillBuffer buffer = streaming ? null : new SpillBuffer(configuration.getSpillThreshold());
+
+            AsyncXmlParser parser;
+
+            PayloadInflater inflater;
+
+            long size;
+
+            boolean failed;
+
+            // Whether the payload is validated as a whole once received, its encoding being unsupported by the parser
+            boolean whole;
+
+            @Override
+            public SimpleReadWriteStream<Buffer> write(Buffer content) {
+                if (!failed) {
+                    try {
+                        size += content.length();
+                        checkBodySize(size);
+                        if (worker || whole) {
+                            buffer.append(content);
+                            return this;
+                        }
+
+                        AsyncXmlParser parser = parser();
+                        long start = recorder.start();
+                        try {
+                            Buffers.consume(content, feeder(parser, inflater));
+                        } catch (UnsupportedXmlEncodingException e) {
+                            if (!wholeFallback) {
+                                throw e;
+                            }
+                            whole = true;
+                            inflater.release();
+                        } finally {
+                            recorder.stop(start);
+                            recorder.bytes(content.length());
+                        }
+
+                        if (streaming) {
+                            super.write(content);
+                        } else {
+                            buffer.append(content);
+                        }
+                    } catch (Exception e) {
+                        failed = true;
+                        release();
+                        fail(request, executionContext, policyChain, payload, recorder, e, errorHandler);
+                    }
+                }
+                return this;
+            }
+
+            @Override
+            public void end() {
+                if (!failed && worker) {
+                    boolean accepted = ValidationExecutor.getInstance().execute(() -> {
+                        try {
+                            parse(buffer, validationHandler(payload.router, errorHandler, recorder), limits, contentEncoding, recorder);
+                            recorder.bytes(buffer.length());
+                        } catch (UnsupportedXmlEncodingException e) {
+                            if (!wholeFallback) {
+                                throw e;
+                            }
+                            validateCompressed(payload, buffer, contentEncoding, limits, errorHandler, recorder);
+                        }
+                        return null;
+                    }, (result, failure) -> complete(failure));
+
+                    if (!accepted) {
+                        release();
+                        rejectOverloaded(request, executionContext, policyChain);
+                    }
+                } else if (!failed) {
+                    try {
+                        if (!whole) {
+                            AsyncXmlParser parser = parser();
+                            long start = recorder.start();
+                            try {
+                                if (inflater != null) {
+                                    inflater.end();
+                                }
+                                parser.end();
+                            } catch (UnsupportedXmlEncodingException e) {
+                                if (!wholeFallback) {
+                                    throw e;
+                                }
+                                whole = true;
+                            } finally {
+                                recorder.stop(start);
+                            }
+                        }
+                        if (whole) {
+                            validateCompressed(payload, buffer, contentEncoding, limits, errorHandler, recorder);
+                        }
+                        recorder.succeeded();
+
+                        if (!streaming) {
+                            buffer.writeTo(super::write);
+                        }
+                        super.end();
+                    } catch (Exception e) {
+                        failed = true;
+                        fail(request, executionContext, policyChain, payload, recorder, e, errorHandler);
+                    } finally {
+                        release();
+                    }
+                }
+            }
+
+            private void complete(Exception failure) {
+                try {
+                    if (failure == null) {
+                        recorder.succeeded();
+                        buffer.writeTo(super::write);
+                        super.end();
+                    } else {
+                        fail(request, executionContext, policyChain, payload, recorder, failure, errorHandler);
+                    }
+                } finally {
+                    release();
+                }
+            }
+
+            private void release() {
+                if (buffer != null) {
+                    buffer.release();
+                }
+                if (inflater != null) {
+                    inflater.release();
+                }
+            }
+
+            private AsyncXmlParser parser() throws SAXException {
+                if (parser == null) {
+                    inflater = PayloadInflater.of(contentEncoding, configuration.getMaxInflationRatio());
+                    parser = new AsyncXmlParser(validationHandler(payload.router, errorHandler, recorder), limits);
+                }
+                return parser;
+            }
+        };
+    }
+
+    /**
+     * @return whether a compressed payload, once held as a whole, can be validated against its schema with the
+     * configured engine when the non-blocking parser does not support its encoding.
+     */
+    private boolean canValidateWhole(Payload payload, String contentEncoding) {
+        return contentEncoding != null && payload.router != null && fragmentPath == null;
+    }
+
+    /**
+     * Parses the whole payload once received, inflating it first if it is compressed, as {@link #incrementalValidation}
+     * does chunk by chunk.
+     */
+    private void parse(SpillBuffer content, ContentHandler handler, XmlLimits limits, String contentEncoding,
+                       ValidationRecorder recorder) throws SAXException {
+        AsyncXmlParser parser = new AsyncXmlParser(handler, limits);
+        PayloadInflater inflater = PayloadInflater.of(contentEncoding, configuration.getMaxInflationRatio());
+        long start = recorder.start();
+        try {
+            content.consume(feeder(parser, inflater));
+            if (inflater != null) {
+                inflater.end();
+            }
+            parser.end();
+        } finally {
+            recorder.stop(start);
+            if (inflater != null) {
+                inflater.release();
+            }
+        }
+    }
+
+    /**
+     * @return a consumer passing the received bytes to the parser, inflating them first if the payload is compressed.
+     */
+    private static Buffers.BytesConsumer<SAXException> feeder(AsyncXmlParser parser, PayloadInflater inflater) {
+        if (inflater == null) {
+            return parser::feed;
+        }
+        return (bytes, offset, length) -> inflater.inflate(bytes, offset, length, parser::feed);
+    }
+
+    /**
+     * @return the handler validating the SAX events of the payload, or of its fragment at the configured path, or
+     * {@code null} when no schema applies.
+     */
+    private ContentHandler validationHandler(SchemaRouter router, ValidationErrorHandler errorHandler, ValidationRecorder recorder) {
+        if (router == null) {
+            return null;
+        }
+
+        ContentHandler handler;
+        if (router.isSingle()) {
+            handler = validatorHandler(router.getDefault().getSchema(), errorHandler);
+        } else {
+            handler = new RoutingContentHandler(rootElement -> {
+                SchemaRouter.Route route = router.route(rootElement, errorHandler);
+                route.getLookup().replay(recorder);
+                return validatorHandler(route.getSchema(), errorHandler);
+            });
+        }
+        return fragmentPath == null ? handler : new FragmentContentHandler(fragmentPath, handler);
+    }
+
+    private static ValidatorHandler validatorHandler(CompiledSchema schema, ValidationErrorHandler errorHandler) {
+        ValidatorHandler validatorHandler = schema.getSchema().newValidatorHandler();
+        validatorHandler.setErrorHandler(errorHandler);
+        return validatorHandler;
+    }
+
+    /**
+     * Passes the payload through as it is received, and validates a copy of it on the shadow pool once it is complete.
+     * The result is only reported in the metrics and logs.
+     *
+     * The copy is skipped, and counted as dropped, when the shadow pool is saturated or the payload is larger than
+     * {@link #SHADOW_MAX_SIZE}, so that shadow validation never holds more than a bounded amount of memory.
+     */
+    private ReadWriteStream shadowValidation(Request request, Payload payload, String contentEncoding) {
+        ValidationExecutor executor = ValidationExecutor.getShadowInstance();
+        String requestId = request.id();
+        XmlLimits limits = limits();
+        return new BufferedReadWriteStream() {
+
+            SpillBuffer copy = executor.isSaturated() ? null : new SpillBuffer(configuration.getSpillThreshold());
+
+            boolean dropped = copy == null;
+
+            @Override
+            public SimpleReadWriteStream<Buffer> write(Buffer content) {
+                if (copy != null) {
+                    if (copy.length() + content.length() > SHADOW_MAX_SIZE) {
+                        drop();
+                    } else {
+                        try {
+                            copy.append(content);
+                        } catch (UncheckedIOException e) {
+                            logger.warn("Unable to copy payload of {} for shadow XML validation", requestId, e);
+                            drop();
+                        }
+                    }
+                }
+                return super.write(content);
+            }
+
+            private void drop() {
+                copy.release();
+                copy = null;
+                dropped = true;
+            }
+
+            @Override
+            public void end() {
+                super.end();
+
+                SpillBuffer payloadCopy = copy;
+                copy = null;
+                if (dropped || !executor.execute(() -> shadowValidate(requestId, payload, payloadCopy, limits, contentEncoding))) {
+                    if (payloadCopy != null) {
+                        payloadCopy.release();
+                    }
+                    XmlValidationMetrics.getInstance().shadowDropped();
+                }
+            }
+        };
+    }
+
+    private void shadowValidate(String requestId, Payload payload, SpillBuffer content, XmlLimits limits, String contentEncoding) {
+        ValidationRecorder recorder = ValidationRecorder.shadow();
+        ValidationErrorHandler errorHandler = new ValidationErrorHandler();
+        // Same choice as for enforced validation, between the SAX pipeline and the validation of the whole payload
+        boolean incremental = payload.router == null || fragmentPath != null
+                || (contentEncoding != null && payload.batchPath == null);
+        try {
+            checkBodySize(content.length());
+            if (incremental) {
+                try {
+                    parse(content, validationHandler(payload.router, errorHandler, recorder), limits, contentEncoding, recorder);
+                    recorder.bytes(content.length());
+                } catch (UnsupportedXmlEncodingException e) {
+                    if (!canValidateWhole(payload, contentEncoding)) {
+                        throw e;
+                    }
+                    validateCompressed(payload, content, contentEncoding, limits, errorHandler, recorder);
+                }
+            } else if (contentEncoding != null) {
+                validateCompressed(payload, content, contentEncoding, limits, errorHandler, recorder);
+            } else {
+                if (limits.isEnabled()) {
+                    parse(content, null, limits, null, recorder);
+                }
+                validate(payload, payload.batchPath == null ? schema(payload.router, content, errorHandler, recorder) : null,
+                        content, errorHandler, recorder);
+            }
+            recorder.succeeded();
+        } catch (Exception e) {
+            FailureReason reason = FailureReason.of(e, errorHandler);
+            recorder.failed(reason);
+            logger.info("Shadow XML validation of {} {} failed with {}: {}", payload.response ? "response" : "request",
+                    requestId, reason, e.getMessage());
+        } finally {
+            content.release();
+        }
+    }
+
+    private XmlLimits limits() {
+        return new XmlLimits(configuration.getMaxDepth(), configuration.getMaxElements(), configuration.getMaxAttributes(),
+                configuration.getMaxTextLength(), configuration.isRejectDoctype());
+    }
+
+    private void checkBodySize(long size) throws LimitExceededException {
+        if (configuration.getMaxBodySize() > 0 && size > configuration.getMaxBodySize()) {
+            throw new LimitExceededException("Payload size exceeds the limit of " + configuration.getMaxBodySize() + " bytes", null);
+        }
+    }
+
+    private void fail(Request request, ExecutionContext executionContext, PolicyChain policyChain, Payload payload,
+                      ValidationRecorder recorder, Exception failure, ValidationErrorHandler errorHandler) {
+        if (failure instanceof BatchValidationException) {
+            recorder.batchFailures(((BatchValidationException) failure).getItems());
+        }
+        FailureReason reason = FailureReason.of(failure, errorHandler);
+        recorder.failed(reason);
+        request.metrics().setMessage(failure.getMessage());
+        // An invalid response is not the fault of the client
+        sendErrorResponse(executionContext, policyChain, !payload.response && (failure instanceof SAXException || failure instanceof IOException) ?
+                HttpStatusCode.BAD_REQUEST_400 : HttpStatusCode.INTERNAL_SERVER_ERROR_500);
+    }
+
+    private void rejectOverloaded(Request request, ExecutionContext executionContext, PolicyChain policyChain) {
+        request.metrics().setMessage("XML validation worker queue is full");
+        sendErrorResponse(executionContext, policyChain, HttpStatusCode.SERVICE_UNAVAILABLE_503);
+    }
+
     private void sendErrorResponse(ExecutionContext executionContext, PolicyChain policyChain, int httpStatusCode) {
         String errorMessage = null;
         if (configuration.getErrorMessage() != null && !configuration.getErrorMessage().isEmpty()) {
             errorMessage = executionContext.getTemplateEngine().convert(configuration.getErrorMessage());
         } else {
-            errorMessage = httpStatusCode == 400 ? BAD_REQUEST : INTERNAL_ERROR;
+            errorMessage = httpStatusCode == HttpStatusCode.BAD_REQUEST_400 ? BAD_REQUEST :
+                    httpStatusCode == HttpStatusCode.SERVICE_UNAVAILABLE_503 ? SERVICE_UNAVAILABLE : INTERNAL_ERROR;
         }
         policyChain.streamFailWith(PolicyResult.failure(httpStatusCode, errorMessage, MediaType.APPLICATION_XML));
     }
+
+    /**
+     * The payload validated by a stream, either the request or the response one.
+     */
+    private static final class Payload {
+
+        /**
+         * The schemas to validate against, or {@code null} to only check that the payload is well-formed.
+         */
+        private final SchemaRouter router;
+
+        /**
+         * The path of the parent of the items to validate one by one, or {@code null} to validate the whole payload.
+         */
+        private final List<QName> batchPath;
+
+        private final boolean response;
+
+        private Payload(SchemaRouter router, List<QName> batchPath, boolean response) {
+            this.router = router;
+            this.batchPath = batchPath;
+            this.response = response;
+        }
+    }
 }
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.configuration;
+
+/**
+ * An XSD schema imported or included by the configured schemas, found by its location or by its target namespace.
+ *
+ * @author GraviteeSource Team
+ */
+public class SchemaCatalogEntry {
+
+    /**
+     * Location of the schema, as referenced by the {@code schemaLocation} of the imports and includes. Relative
+     * locations are resolved from the root of the catalog, where the configured schemas are.
+     */
+    private String location;
+
+    private String namespace;
+
+    private String xsdSchema;
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public void setNamespace(String namespace) {
+        this.namespace = namespace;
+    }
+
+    public String getXsdSchema() {
+        return xsdSchema;
+    }
+
+    public void setXsdSchema(String xsdSchema) {
+        this.xsdSchema = xsdSchema;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.configuration;
+
+/**
+ * An XSD schema applied to the documents with a given root element, or with a root element in a given namespace.
+ *
+ * @author GraviteeSource Team
+ */
+public class SchemaMapping {
+
+    /**
+     * Qualified name of the root element, as {@code {namespace}localName}, or {@code localName} without namespace.
+     */
+    private String rootElement;
+
+    private String namespace;
+
+    private String xsdSchema;
+
+    public String getRootElement() {
+        return rootElement;
+    }
+
+    public void setRootElement(String rootElement) {
+        this.rootElement = rootElement;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public void setNamespace(String namespace) {
+        this.namespace = namespace;
+    }
+
+    public String getXsdSchema() {
+        return xsdSchema;
+    }
+
+    public void setXsdSchema(String xsdSchema) {
+        this.xsdSchema = xsdSchema;
+    }
+}
@@ -17,12 +17,78 @@ package io.gravitee.policy.xmlvalidation.configuration;
 
 import io.gravitee.policy.api.PolicyConfiguration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class XmlValidationPolicyConfiguration implements PolicyConfiguration {
 
     private String errorMessage;
 
+    private ValidationMode validationMode = ValidationMode.SCHEMA;
+
     private String xsdSchema;
 
+    /**
+     * Path of an XSD schema file used instead of {@link #xsdSchema}, reloaded when it changes.
+     */
+    private String xsdSchemaFile;
+
+    private List<SchemaMapping> schemaMappings = new ArrayList<>();
+
+    private List<SchemaCatalogEntry> schemaCatalog = new ArrayList<>();
+
+    /**
+     * Path of the element whose first child is validated instead of the whole payload, such as {@code /Envelope/Body}.
+     */
+    private String fragmentPath;
+
+    /**
+     * Path of the element whose child elements are validated one by one, in parallel, such as {@code /batch}.
+     */
+    private String batchPath;
+
+    private String warmupSample;
+
+    private String responseXsdSchema;
+
+    private double responseSamplingRate = 100;
+
+    private boolean streaming;
+
+    private ExecutionMode executionMode = ExecutionMode.INLINE;
+
+    private ValidationEngineType engine = ValidationEngineType.JAXP;
+
+    private boolean shadow;
+
+    /**
+     * Whether the verdicts of the buffered payloads are cached, so that a payload received again is not validated again.
+     */
+    private boolean verdictCache;
+
+    private long maxBodySize;
+
+    /**
+     * Size in bytes above which the payload is held in a temporary file instead of the heap, 0 to always keep it in the
+     * heap.
+     */
+    private long spillThreshold;
+
+    /**
+     * Maximum ratio between the inflated and the compressed sizes of a compressed payload, 0 for no limit.
+     */
+    private int maxInflationRatio = 100;
+
+    private int maxDepth;
+
+    private int maxElements;
+
+    private int maxAttributes;
+
+    private int maxTextLength;
+
+    private boolean rejectDoctype;
+
     public String getErrorMessage() {
         return errorMessage;
     }
@@ -31,6 +97,14 @@ public class XmlValidationPolicyConfiguration implements PolicyConfiguration {
         this.errorMessage = errorMessage;
     }
 
+    public ValidationMode getValidationMode() {
+        return validationMode;
+    }
+
+    public void setValidationMode(ValidationMode validationMode) {
+        this.validationMode = validationMode;
+    }
+
     public String getXsdSchema() {
         return xsdSchema;
     }
@@ -38,4 +112,172 @@ public class XmlValidationPolicyConfiguration implements PolicyConfiguration {
     public void setXsdSchema(String xsdSchema) {
         this.xsdSchema = xsdSchema;
     }
+
+    public String getXsdSchemaFile() {
+        return xsdSchemaFile;
+    }
+
+    public void setXsdSchemaFile(String xsdSchemaFile) {
+        this.xsdSchemaFile = xsdSchemaFile;
+    }
+
+    public List<SchemaMapping> getSchemaMappings() {
+        return schemaMappings;
+    }
+
+    public void setSchemaMappings(List<SchemaMapping> schemaMappings) {
+        this.schemaMappings = schemaMappings;
+    }
+
+    public List<SchemaCatalogEntry> getSchemaCatalog() {
+        return schemaCatalog;
+    }
+
+    public void setSchemaCatalog(List<SchemaCatalogEntry> schemaCatalog) {
+        this.schemaCatalog = schemaCatalog;
+    }
+
+    public String getFragmentPath() {
+        return fragmentPath;
+    }
+
+    public void setFragmentPath(String fragmentPath) {
+        this.fragmentPath = fragmentPath;
+    }
+
+    public String getBatchPath() {
+        return batchPath;
+    }
+
+    public void setBatchPath(String batchPath) {
+        this.batchPath = batchPath;
+    }
+
+    public String getWarmupSample() {
+        return warmupSample;
+    }
+
+    public void setWarmupSample(String warmupSample) {
+        this.warmupSample = warmupSample;
+    }
+
+    public String getResponseXsdSchema() {
+        return responseXsdSchema;
+    }
+
+    public void setResponseXsdSchema(String responseXsdSchema) {
+        this.responseXsdSchema = responseXsdSchema;
+    }
+
+    public double getResponseSamplingRate() {
+        return responseSamplingRate;
+    }
+
+    public void setResponseSamplingRate(double responseSamplingRate) {
+        this.responseSamplingRate = responseSamplingRate;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public ValidationEngineType getEngine() {
+        return engine;
+    }
+
+    public void setEngine(ValidationEngineType engine) {
+        this.engine = engine;
+    }
+
+    public boolean isShadow() {
+        return shadow;
+    }
+
+    public void setShadow(boolean shadow) {
+        this.shadow = shadow;
+    }
+
+    public boolean isVerdictCache() {
+        return verdictCache;
+    }
+
+    public void setVerdictCache(boolean verdictCache) {
+        this.verdictCache = verdictCache;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    public void setMaxBodySize(long maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public void setSpillThreshold(long spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public int getMaxInflationRatio() {
+        return maxInflationRatio;
+    }
+
+    public void setMaxInflationRatio(int maxInflationRatio) {
+        this.maxInflationRatio = maxInflationRatio;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxElements() {
+        return maxElements;
+    }
+
+    public void setMaxElements(int maxElements) {
+        this.maxElements = maxElements;
+    }
+
+    public int getMaxAttributes() {
+        return maxAttributes;
+    }
+
+    public void setMaxAttributes(int maxAttributes) {
+        this.maxAttributes = maxAttributes;
+    }
+
+    public int getMaxTextLength() {
+        return maxTextLength;
+    }
+
+    public void setMaxTextLength(int maxTextLength) {
+        this.maxTextLength = maxTextLength;
+    }
+
+    public boolean isRejectDoctype() {
+        return rejectDoctype;
+    }
+
+    public void setRejectDoctype(boolean rejectDoctype) {
+        this.rejectDoctype = rejectDoctype;
+    }
 }
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.executor;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JVM wide, bounded pool of worker threads used to run validations outside of the gateway event loop.
+ *
+ * Tasks are queued up to the configured queue size. When the queue is full, new tasks are rejected so that callers can
+ * answer immediately instead of piling up requests in memory.
+ *
+ * Shadow validations run on a distinct pool, so that they never delay the validations which decide of a request. The
+ * items of batch payloads run on a third pool, so that a validation waiting for its items never holds the workers which
+ * would validate them.
+ *
+ * @author GraviteeSource Team
+ */
+public class ValidationExecutor {
+
+    public static final String POOL_SIZE_PROPERTY = "gravitee.policy.xml-validation.worker.pool-size";
+
+    public static final String QUEUE_SIZE_PROPERTY = "gravitee.policy.xml-validation.worker.queue-size";
+
+    public static final String SHADOW_POOL_SIZE_PROPERTY = "gravitee.policy.xml-validation.shadow.pool-size";
+
+    public static final String SHADOW_QUEUE_SIZE_PROPERTY = "gravitee.policy.xml-validation.shadow.queue-size";
+
+    public static final String BATCH_POOL_SIZE_PROPERTY = "gravitee.policy.xml-validation.batch.pool-size";
+
+    public static final String BATCH_QUEUE_SIZE_PROPERTY = "gravitee.policy.xml-validation.batch.queue-size";
+
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final int DEFAULT_SHADOW_QUEUE_SIZE = 100;
+
+    private static final ValidationExecutor INSTANCE = new ValidationExecutor("xml-validation-worker",
+            Integer.getInteger(POOL_SIZE_PROPERTY, Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE));
+
+    private static final ValidationExecutor SHADOW_INSTANCE = new ValidationExecutor("xml-validation-shadow",
+            Integer.getInteger(SHADOW_POOL_SIZE_PROPERTY, Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+            Integer.getInteger(SHADOW_QUEUE_SIZE_PROPERTY, DEFAULT_SHADOW_QUEUE_SIZE));
+
+    private static final ValidationExecutor BATCH_INSTANCE = new ValidationExecutor("xml-validation-batch",
+            Integer.getInteger(BATCH_POOL_SIZE_PROPERTY, Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger(BATCH_QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE));
+
+    private final ThreadPoolExecutor executor;
+
+    ValidationExecutor(String name, int poolSize, int queueSize) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + '-' + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static ValidationExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the pool running the shadow validations, which report their result without affecting the request.
+     */
+    public static ValidationExecutor getShadowInstance() {
+        return SHADOW_INSTANCE;
+    }
+
+    /**
+     * @return the pool validating the items of batch payloads.
+     */
+    public static ValidationExecutor getBatchInstance() {
+        return BATCH_INSTANCE;
+    }
+
+    /**
+     * Runs the task on the worker pool, then runs the continuation on the Vert.x context of the caller, if any. An
+     * {@link Error} thrown by the task, such as a {@link StackOverflowError} on a deeply nested payload, resumes the
+     * caller with an {@link ExecutionException} wrapping it, so that the request is still answered.
+     *
+     * @return {@code false} if the task has been rejected because the queue is full.
+     */
+    public <T> boolean execute(Task<T> task, Continuation<T> continuation) {
+        final Context context = Vertx.currentContext();
+        try {
+            executor.execute(() -> {
+                T result = null;
+                Exception failure = null;
+                try {
+                    result = task.call();
+                } catch (Exception e) {
+                    failure = e;
+                } catch (Error e) {
+                    failure = new ExecutionException(e);
+                }
+
+                final T taskResult = result;
+                final Exception taskFailure = failure;
+                if (context != null) {
+                    context.runOnContext(v -> continuation.resume(taskResult, taskFailure));
+                } else {
+                    continuation.resume(taskResult, taskFailure);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the task on the worker pool, without resuming the caller.
+     *
+     * @return {@code false} if the task has been rejected because the queue is full.
+     */
+    public boolean execute(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return {@code true} if the queue is full, so that a new task would be rejected.
+     */
+    public boolean isSaturated() {
+        return executor.getQueue().remainingCapacity() == 0;
+    }
+
+    /**
+     * @return the number of tasks waiting for a worker.
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    @FunctionalInterface
+    public interface Task<T> {
+
+        T call() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Continuation<T> {
+
+        void resume(T result, Exception failure);
+    }
+}
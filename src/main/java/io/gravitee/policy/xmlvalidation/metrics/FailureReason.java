@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.metrics;
+
+import io.gravitee.policy.xmlvalidation.schema.InvalidSchemaException;
+import io.gravitee.policy.xmlvalidation.schema.ValidationErrorHandler;
+import io.gravitee.policy.xmlvalidation.stream.LimitExceededException;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+
+/**
+ * Category of a validation failure.
+ *
+ * @author GraviteeSource Team
+ */
+public enum FailureReason {
+
+    /**
+     * The payload is not well-formed XML.
+     */
+    MALFORMED,
+
+    /**
+     * The payload is well-formed but breaks the schema.
+     */
+    SCHEMA_INVALID,
+
+    /**
+     * The payload exceeds one of the configured size or structure limits.
+     */
+    LIMIT_EXCEEDED,
+
+    /**
+     * The payload could not be validated, for instance because the schema does not compile.
+     */
+    INTERNAL;
+
+    public static FailureReason of(Exception failure, ValidationErrorHandler errorHandler) {
+        if (failure instanceof InvalidSchemaException) {
+            return INTERNAL;
+        }
+        if (failure instanceof LimitExceededException) {
+            return LIMIT_EXCEEDED;
+        }
+        if (errorHandler != null && errorHandler.hasSchemaViolation()) {
+            return SCHEMA_INVALID;
+        }
+        if (failure instanceof SAXException || failure instanceof IOException) {
+            return MALFORMED;
+        }
+        return INTERNAL;
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.metrics;
+
+import io.gravitee.gateway.api.ExecutionContext;
+import io.gravitee.policy.xmlvalidation.schema.SchemaCache;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the measurements of a single validation, then publishes them both as execution context attributes, so that
+ * they can be read by the next policies and reporters, and to the JVM wide {@link XmlValidationMetrics}.
+ *
+ * Durations are in microseconds. The attributes of a response validation are prefixed with
+ * {@link #RESPONSE_ATTR_PREFIX} instead of {@link #ATTR_PREFIX}.
+ *
+ * A shadow validation completes after the request has been forwarded, so it only publishes to the JVM wide metrics,
+ * where its failures are counted as shadow rejections.
+ *
+ * @author GraviteeSource Team
+ */
+public class ValidationRecorder implements SchemaCache.Listener {
+
+    public static final String ATTR_PREFIX = "xml-validation.";
+    public static final String RESPONSE_ATTR_PREFIX = "xml-validation.response.";
+
+    public static final String ATTR_SCHEMA_CACHE = ATTR_PREFIX + "schema-cache";
+    public static final String ATTR_SCHEMA_COMPILE_TIME = ATTR_PREFIX + "schema-compile-time";
+    public static final String ATTR_VALIDATION_TIME = ATTR_PREFIX + "validation-time";
+    public static final String ATTR_BYTES = ATTR_PREFIX + "bytes";
+    public static final String ATTR_FAILURE = ATTR_PREFIX + "failure";
+    public static final String ATTR_VERDICT_CACHE = ATTR_PREFIX + "verdict-cache";
+    public static final String ATTR_BATCH_FAILURES = ATTR_PREFIX + "batch-failures";
+
+    static final String SCHEMA_CACHE_HIT = "HIT";
+    static final String SCHEMA_CACHE_MISS = "MISS";
+
+    private final ExecutionContext executionContext;
+
+    private final XmlValidationMetrics metrics;
+
+    private final String attributePrefix;
+
+    private long bytes;
+
+    private long validationTime;
+
+    public ValidationRecorder(ExecutionContext executionContext, String attributePrefix) {
+        this(executionContext, XmlValidationMetrics.getInstance(), attributePrefix);
+    }
+
+    ValidationRecorder(ExecutionContext executionContext, XmlValidationMetrics metrics, String attributePrefix) {
+        this.executionContext = executionContext;
+        this.metrics = metrics;
+        this.attributePrefix = attributePrefix;
+    }
+
+    /**
+     * @return a recorder for a shadow validation, which is not bound to the execution context of the request.
+     */
+    public static ValidationRecorder shadow() {
+        return new ValidationRecorder(null, XmlValidationMetrics.getInstance(), null);
+    }
+
+    @Override
+    public void hit() {
+        setAttribute(ATTR_SCHEMA_CACHE, SCHEMA_CACHE_HIT);
+        metrics.schemaCacheHit();
+    }
+
+    @Override
+    public void compiled(long micros) {
+        setAttribute(ATTR_SCHEMA_CACHE, SCHEMA_CACHE_MISS);
+        setAttribute(ATTR_SCHEMA_COMPILE_TIME, micros);
+        metrics.schemaCompiled(micros);
+    }
+
+    /**
+     * @param hit whether the verdict of the payload was cached, in which case it has not been validated again.
+     */
+    public void verdictCache(boolean hit) {
+        setAttribute(ATTR_VERDICT_CACHE, hit ? SCHEMA_CACHE_HIT : SCHEMA_CACHE_MISS);
+        metrics.verdictCache(hit);
+    }
+
+    /**
+     * @param items the indices of the invalid items of a batch payload.
+     */
+    public void batchFailures(List<Integer> items) {
+        setAttribute(ATTR_BATCH_FAILURES, items);
+    }
+
+    public void bytes(long count) {
+        bytes += count;
+    }
+
+    /**
+     * @return the start time to give back to {@link #stop(long)}.
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time elapsed since {@code start} to the validation time. A streamed payload is validated by several
+     * calls, one for each chunk.
+     */
+    public void stop(long start) {
+        validationTime += System.nanoTime() - start;
+    }
+
+    public void succeeded() {
+        publish();
+        if (isShadow()) {
+            metrics.shadowValidated(false);
+        }
+    }
+
+    public void failed(FailureReason reason) {
+        publish();
+        if (isShadow()) {
+            metrics.shadowValidated(true);
+        } else {
+            setAttribute(ATTR_FAILURE, reason.name());
+            metrics.failed(reason);
+        }
+    }
+
+    private boolean isShadow() {
+        return executionContext == null;
+    }
+
+    private void publish() {
+        long micros = TimeUnit.NANOSECONDS.toMicros(validationTime);
+        setAttribute(ATTR_VALIDATION_TIME, micros);
+        setAttribute(ATTR_BYTES, bytes);
+        metrics.validated(bytes, micros);
+    }
+
+    private void setAttribute(String attribute, Object value) {
+        if (isShadow()) {
+            return;
+        }
+        executionContext.setAttribute(attributePrefix + attribute.substring(ATTR_PREFIX.length()), value);
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.metrics;
+
+import io.gravitee.policy.xmlvalidation.executor.ValidationExecutor;
+import io.gravitee.policy.xmlvalidation.schema.SchemaCache;
+import io.gravitee.policy.xmlvalidation.schema.VerdictCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JVM wide counters and histograms of the XML validation policy, shared by every API and exposed through JMX under
+ * {@value #OBJECT_NAME}.
+ *
+ * @author GraviteeSource Team
+ */
+public class XmlValidationMetrics implements XmlValidationMetricsMXBean {
+
+    public static final String OBJECT_NAME = "io.gravitee.policy.xmlvalidation:type=XmlValidationMetrics";
+
+    private static final Logger logger = LoggerFactory.getLogger(XmlValidationMetrics.class);
+
+    private static final XmlValidationMetrics INSTANCE = register(new XmlValidationMetrics());
+
+    private final LongAdder schemaCacheHits = new LongAdder();
+
+    private final LongAdder schemaCacheMisses = new LongAdder();
+
+    private final LatencyHistogram schemaCompileTime = new LatencyHistogram();
+
+    private final LongAdder verdictCacheHits = new LongAdder();
+
+    private final LongAdder verdictCacheMisses = new LongAdder();
+
+    private final LatencyHistogram validationTime = new LatencyHistogram();
+
+    private final LongAdder bytesValidated = new LongAdder();
+
+    private final Map<FailureReason, LongAdder> failures = new EnumMap<>(FailureReason.class);
+
+    private final LongAdder shadowValidations = new LongAdder();
+
+    private final LongAdder shadowRejections = new LongAdder();
+
+    private final LongAdder shadowDropped = new LongAdder();
+
+    XmlValidationMetrics() {
+        for (FailureReason reason : FailureReason.values()) {
+            failures.put(reason, new LongAdder());
+        }
+    }
+
+    public static XmlValidationMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public void schemaCacheHit() {
+        schemaCacheHits.increment();
+    }
+
+    public void schemaCompiled(long micros) {
+        schemaCacheMisses.increment();
+        schemaCompileTime.record(micros);
+    }
+
+    public void verdictCache(boolean hit) {
+        (hit ? verdictCacheHits : verdictCacheMisses).increment();
+    }
+
+    public void validated(long bytes, long micros) {
+        bytesValidated.add(bytes);
+        validationTime.record(micros);
+    }
+
+    public void failed(FailureReason reason) {
+        failures.get(reason).increment();
+    }
+
+    public void shadowValidated(boolean rejected) {
+        shadowValidations.increment();
+        if (rejected) {
+            shadowRejections.increment();
+        }
+    }
+
+    public void shadowDropped() {
+        shadowDropped.increment();
+    }
+
+    @Override
+    public long getSchemaCacheHits() {
+        return schemaCacheHits.sum();
+    }
+
+    @Override
+    public long getSchemaCacheMisses() {
+        return schemaCacheMisses.sum();
+    }
+
+    @Override
+    public int getSchemaCacheSize() {
+        return SchemaCache.getInstance().size();
+    }
+
+    @Override
+    public long getSchemaCompilations() {
+        return schemaCompileTime.getCount();
+    }
+
+    @Override
+    public double getSchemaCompileTimeMean() {
+        return schemaCompileTime.getMean();
+    }
+
+    @Override
+    public long getSchemaCompileTimeMax() {
+        return schemaCompileTime.getMax();
+    }
+
+    @Override
+    public long getVerdictCacheHits() {
+        return verdictCacheHits.sum();
+    }
+
+    @Override
+    public long getVerdictCacheMisses() {
+        return verdictCacheMisses.sum();
+    }
+
+    @Override
+    public int getVerdictCacheSize() {
+        return VerdictCache.getInstance().size();
+    }
+
+    @Override
+    public long getValidations() {
+        return validationTime.getCount();
+    }
+
+    @Override
+    public long getBytesValidated() {
+        return bytesValidated.sum();
+    }
+
+    @Override
+    public double getValidationTimeMean() {
+        return validationTime.getMean();
+    }
+
+    @Override
+    public long getValidationTimeP50() {
+        return validationTime.getPercentile(50);
+    }
+
+    @Override
+    public long getValidationTimeP99() {
+        return validationTime.getPercentile(99);
+    }
+
+    @Override
+    public long getValidationTimeMax() {
+        return validationTime.getMax();
+    }
+
+    @Override
+    public long getMalformedFailures() {
+        return failures.get(FailureReason.MALFORMED).sum();
+    }
+
+    @Override
+    public long getSchemaInvalidFailures() {
+        return failures.get(FailureReason.SCHEMA_INVALID).sum();
+    }
+
+    @Override
+    public long getLimitExceededFailures() {
+        return failures.get(FailureReason.LIMIT_EXCEEDED).sum();
+    }
+
+    @Override
+    public long getInternalFailures() {
+        return failures.get(FailureReason.INTERNAL).sum();
+    }
+
+    @Override
+    public int getValidatorPoolIdle() {
+        return SchemaCache.getInstance().getValidatorPoolIdle();
+    }
+
+    @Override
+    public int getValidatorPoolInUse() {
+        return SchemaCache.getInstance().getValidatorPoolInUse();
+    }
+
+    @Override
+    public int getWorkerQueueSize() {
+        return ValidationExecutor.getInstance().getQueueSize();
+    }
+
+    @Override
+    public long getShadowValidations() {
+        return shadowValidations.sum();
+    }
+
+    @Override
+    public long getShadowRejections() {
+        return shadowRejections.sum();
+    }
+
+    @Override
+    public long getShadowDropped() {
+        return shadowDropped.sum();
+    }
+
+    @Override
+    public int getShadowQueueSize() {
+        return ValidationExecutor.getShadowInstance().getQueueSize();
+    }
+
+    private static XmlValidationMetrics register(XmlValidationMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(metrics, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // The plugin has been reloaded, replace the metrics of the previous class loader
+                server.unregisterMBean(name);
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException | RuntimeException e) {
+            logger.warn("Unable to register XML validation metrics in JMX", e);
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.metrics;
+
+/**
+ * JMX view of the XML validation metrics of the gateway. Durations are in microseconds.
+ *
+ * @author GraviteeSource Team
+ */
+public interface XmlValidationMetricsMXBean {
+
+    long getSchemaCacheHits();
+
+    long getSchemaCacheMisses();
+
+    int getSchemaCacheSize();
+
+    long getSchemaCompilations();
+
+    double getSchemaCompileTimeMean();
+
+    long getSchemaCompileTimeMax();
+
+    long getVerdictCacheHits();
+
+    long getVerdictCacheMisses();
+
+    int getVerdictCacheSize();
+
+    long getValidations();
+
+    long getBytesValidated();
+
+    double getValidationTimeMean();
+
+    long getValidationTimeP50();
+
+    long getValidationTimeP99();
+
+    long getValidationTimeMax();
+
+    long getMalformedFailures();
+
+    long getSchemaInvalidFailures();
+
+    long getLimitExceededFailures();
+
+    long getInternalFailures();
+
+    int getValidatorPoolIdle();
+
+    int getValidatorPoolInUse();
+
+    int getWorkerQueueSize();
+
+    /**
+     * @return the number of payloads validated in shadow mode, whatever the result.
+     */
+    long getShadowValidations();
+
+    /**
+     * @return the number of payloads which would have been rejected in enforcing mode.
+     */
+    long getShadowRejections();
+
+    /**
+     * @return the number of payloads not validated in shadow mode because the shadow pool was overloaded or the payload
+     * too large.
+     */
+    long getShadowDropped();
+
+    int getShadowQueueSize();
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.xml.sax.SAXException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thrown when items of a batch payload are invalid. The message gives the indices of the invalid items, starting at 0,
+ * and the failure of the first one.
+ *
+ * @author GraviteeSource Team
+ */
+public class BatchValidationException extends SAXException {
+
+    private final List<Integer> items;
+
+    BatchValidationException(Map<Integer, Exception> failures) {
+        super(message(failures), failures.values().iterator().next());
+        this.items = Collections.unmodifiableList(new ArrayList<>(failures.keySet()));
+    }
+
+    /**
+     * @return the indices of the invalid items, in ascending order.
+     */
+    public List<Integer> getItems() {
+        return items;
+    }
+
+    private static String message(Map<Integer, Exception> failures) {
+        Map.Entry<Integer, Exception> first = failures.entrySet().iterator().next();
+        return "Invalid batch items " + failures.keySet() + ", item " + first.getKey() + ": " + first.getValue().getMessage();
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import io.gravitee.policy.xmlvalidation.executor.ValidationExecutor;
+import io.gravitee.policy.xmlvalidation.stream.BatchSplitter;
+import org.xml.sax.SAXException;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Validates the items of a batch payload in parallel, each one as a standalone document against the schema routed from
+ * its root element.
+ *
+ * The payload is split on the calling thread while the items are validated on the batch pool, or on the calling thread
+ * when the pool queue is full. The first invalid item cancels the items which have not started yet, and stops the
+ * splitting. Items already running complete, so that more than one invalid item may be reported.
+ *
+ * The calling thread waits for the items, so it must not be an event loop thread. An instance validates a single
+ * payload.
+ *
+ * @author GraviteeSource Team
+ */
+public class BatchValidator {
+
+    private final SchemaRouter router;
+
+    private final ValidationEngine engine;
+
+    private final ValidationExecutor executor;
+
+    private final Map<Integer, Exception> failures = new ConcurrentSkipListMap<>();
+
+    private volatile boolean cancelled;
+
+    private volatile boolean schemaViolation;
+
+    private int pending;
+
+    public BatchValidator(SchemaRouter router, ValidationEngine engine, ValidationExecutor executor) {
+        this.router = router;
+        this.engine = engine;
+        this.executor = executor;
+    }
+
+    /**
+     * @param path the path of the parent of the items.
+     * @throws BatchValidationException if at least one item is invalid.
+     * @throws InvalidSchemaException    if the schema of an item can not be used by the engine.
+     */
+    public void validate(InputStream payload, List<QName> path, ValidationErrorHandler errorHandler) throws SAXException {
+        try {
+            BatchSplitter.split(payload, path, (index, rootElement, item) -> {
+                started();
+                Runnable task = () -> validate(index, rootElement, item);
+                if (!executor.execute(task)) {
+                    task.run();
+                }
+                return !cancelled;
+            });
+        } finally {
+            // Even when the payload is malformed, so that no item is validated once the payload has been answered
+            await();
+        }
+
+        if (!failures.isEmpty()) {
+            for (Exception failure : failures.values()) {
+                // Not the fault of the items
+                if (failure instanceof InvalidSchemaException) {
+                    throw (InvalidSchemaException) failure;
+                }
+                if (failure instanceof RuntimeException) {
+                    throw (RuntimeException) failure;
+                }
+            }
+            errorHandler.schemaViolation = schemaViolation;
+            throw new BatchValidationException(failures);
+        }
+    }
+
+    private void validate(int index, QName rootElement, byte[] item) {
+        try {
+            if (cancelled) {
+                return;
+            }
+            ValidationErrorHandler errorHandler = new ValidationErrorHandler();
+            try {
+                CompiledSchema schema = router.route(rootElement, errorHandler).getSchema();
+                engine.validate(schema, new ByteArrayInputStream(item), errorHandler);
+            } catch (SAXException | IOException | RuntimeException e) {
+                failures.put(index, e);
+                schemaViolation |= errorHandler.hasSchemaViolation();
+                cancelled = true;
+            }
+        } finally {
+            completed();
+        }
+    }
+
+    private synchronized void started() {
+        pending++;
+    }
+
+    private synchronized void completed() {
+        if (--pending == 0) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void await() throws SAXException {
+        while (pending > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+                throw new SAXException("Interrupted while waiting for the batch items validation", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import io.gravitee.policy.xmlvalidation.executor.ValidationExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An XSD compiled once and shared between requests. {@link Schema} instances are immutable and thread safe.
+ *
+ * @author GraviteeSource Team
+ */
+public class CompiledSchema {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompiledSchema.class);
+
+    private final String digest;
+
+    private final String xsdSchema;
+
+    private final SchemaCatalog catalog;
+
+    private final Schema schema;
+
+    private final ValidatorPool validators;
+
+    private final AtomicBoolean warmedUp = new AtomicBoolean();
+
+    CompiledSchema(String digest, String xsdSchema, SchemaCatalog catalog, Schema schema) {
+        this.digest = digest;
+        this.xsdSchema = xsdSchema;
+        this.catalog = catalog;
+        this.schema = schema;
+        this.validators = new ValidatorPool(schema);
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return the source of the XSD, for the validation engines which compile it into their own form.
+     */
+    public String getXsdSchema() {
+        return xsdSchema;
+    }
+
+    public SchemaCatalog getCatalog() {
+        return catalog;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public ValidatorPool getValidators() {
+        return validators;
+    }
+
+    /**
+     * Validates the sample document the given number of times on the executor, so that the validation code is compiled
+     * by the JIT and a validator is pooled before the first requests, without delaying the caller. Only the first
+     * accepted call for a schema has an effect. A sample which is not valid against the schema is logged.
+     *
+     * @return {@code false} if the executor rejected the warm-up, which a later call may then submit again.
+     */
+    public boolean warmUp(String sample, int iterations, ValidationExecutor executor) {
+        if (!warmedUp.compareAndSet(false, true)) {
+            return true;
+        }
+
+        boolean accepted = executor.execute(() -> {
+            try {
+                warmUp(sample, iterations);
+            } catch (SAXException | IOException e) {
+                logger.warn("XML validation warm-up sample is not valid against the XSD schema: {}", e.getMessage());
+            }
+        });
+        if (!accepted) {
+            warmedUp.set(false);
+        }
+        return accepted;
+    }
+
+    private void warmUp(String sample, int iterations) throws SAXException, IOException {
+        for (int i = 0; i < iterations; i++) {
+            Validator validator = validators.acquire();
+            try {
+                validator.validate(new StreamSource(new StringReader(sample)));
+            } finally {
+                validators.release(validator);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Validates with the pooled JAXP validators of the schema. This is the default engine.
+ *
+ * @author GraviteeSource Team
+ */
+public class JaxpValidationEngine implements ValidationEngine {
+
+    private static final JaxpValidationEngine INSTANCE = new JaxpValidationEngine();
+
+    JaxpValidationEngine() {
+    }
+
+    public static JaxpValidationEngine getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void prepare(CompiledSchema schema) {
+        // The JAXP schema is compiled by the schema cache
+    }
+
+    @Override
+    public void validate(CompiledSchema schema, InputStream payload, ErrorHandler errorHandler) throws SAXException, IOException {
+        ValidatorPool validators = schema.getValidators();
+        Validator validator = validators.acquire();
+        try {
+            validator.setErrorHandler(errorHandler);
+            validator.validate(new StreamSource(payload));
+        } finally {
+            validators.release(validator);
+        }
+    }
+}
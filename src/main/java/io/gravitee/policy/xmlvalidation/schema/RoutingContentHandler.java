@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forwards the SAX events of a document to a handler chosen when its root element is received.
+ *
+ * The events received before the root element are held, then replayed to the chosen handler. Processing instructions
+ * and whitespaces of the prolog are dropped, as they do not carry anything to validate.
+ *
+ * @author GraviteeSource Team
+ */
+public class RoutingContentHandler implements ContentHandler {
+
+    private final Resolver resolver;
+
+    private ContentHandler delegate;
+
+    private Locator locator;
+
+    private boolean started;
+
+    private final List<String[]> prefixMappings = new ArrayList<>(2);
+
+    public RoutingContentHandler(Resolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        this.locator = locator;
+    }
+
+    @Override
+    public void startDocument() {
+        started = true;
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        if (delegate != null) {
+            delegate.endDocument();
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (delegate == null) {
+            prefixMappings.add(new String[]{prefix, uri});
+        } else {
+            delegate.startPrefixMapping(prefix, uri);
+        }
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        delegate.endPrefixMapping(prefix);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        if (delegate == null) {
+            delegate = resolver.resolve(new QName(uri, localName));
+            if (locator != null) {
+                delegate.setDocumentLocator(locator);
+            }
+            if (started) {
+                delegate.startDocument();
+            }
+            for (String[] prefixMapping : prefixMappings) {
+                delegate.startPrefixMapping(prefixMapping[0], prefixMapping[1]);
+            }
+            prefixMappings.clear();
+        }
+        delegate.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        delegate.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (delegate != null) {
+            delegate.characters(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (delegate != null) {
+            delegate.ignorableWhitespace(ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        if (delegate != null) {
+            delegate.processingInstruction(target, data);
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        if (delegate != null) {
+            delegate.skippedEntity(name);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Resolver {
+
+        /**
+         * @return the handler of a document with the given root element.
+         */
+        ContentHandler resolve(QName rootElement) throws SAXException;
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM wide cache of compiled XSD schemas, keyed by the SHA-256 digest of the schema text and by the
+ * {@link SchemaCatalog} its imports and includes are resolved from.
+ *
+ * The cache is shared by every policy instance and bounded with a LRU eviction. When several threads ask for the same
+ * schema at the same time, only the first one compiles it, the others wait for its result.
+ *
+ * Compilation failures are cached as well: external resources can not be loaded, so compiling the same text again would
+ * fail the same way.
+ *
+ * @author GraviteeSource Team
+ */
+public class SchemaCache {
+
+    public static final String MAX_SIZE_PROPERTY = "gravitee.policy.xml-validation.schema-cache.max-size";
+
+    private static final int DEFAULT_MAX_SIZE = 256;
+
+    private static final SchemaCache INSTANCE = new SchemaCache(Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+
+    private final Map<Key, FutureTask<CompiledSchema>> schemas;
+
+    SchemaCache(final int maxSize) {
+        this.schemas = new LinkedHashMap<Key, FutureTask<CompiledSchema>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<CompiledSchema>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static SchemaCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the compiled form of the given XSD, compiling it if it is not already cached.
+     *
+     * @throws InvalidSchemaException if the XSD can not be compiled.
+     */
+    public CompiledSchema get(String xsdSchema) throws SAXException {
+        return get(xsdSchema, SchemaCatalog.EMPTY, null);
+    }
+
+    /**
+     * Same as {@link #get(String)}, notifying the listener of a cache hit, or of the compilation time on a miss.
+     */
+    public CompiledSchema get(String xsdSchema, Listener listener) throws SAXException {
+        return get(xsdSchema, SchemaCatalog.EMPTY, listener);
+    }
+
+    /**
+     * Same as {@link #get(String, Listener)}, resolving the schemas imported or included by the XSD from the catalog.
+     */
+    public CompiledSchema get(String xsdSchema, SchemaCatalog catalog, Listener listener) throws SAXException {
+        final Key key = new Key(digest(xsdSchema), catalog);
+
+        FutureTask<CompiledSchema> task;
+        boolean owner = false;
+        synchronized (schemas) {
+            task = schemas.get(key);
+            if (task == null) {
+                task = new FutureTask<>(() -> new CompiledSchema(
+                        catalog.isEmpty() ? key.digest : digest(key.digest + catalog.digest()),
+                        xsdSchema, catalog, compile(xsdSchema, catalog)));
+                schemas.put(key, task);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            long start = System.nanoTime();
+            task.run();
+            if (listener != null) {
+                listener.compiled(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+        } else if (listener != null) {
+            listener.hit();
+        }
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw new InvalidSchemaException("Invalid XSD schema: " + e.getCause().getMessage(), toException(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SAXException("Interrupted while waiting for XSD schema compilation", e);
+        }
+    }
+
+    public int size() {
+        synchronized (schemas) {
+            return schemas.size();
+        }
+    }
+
+    /**
+     * @return the number of idle validators pooled for all the cached schemas.
+     */
+    public int getValidatorPoolIdle() {
+        int idle = 0;
+        for (CompiledSchema schema : compiledSchemas()) {
+            idle += schema.getValidators().getIdle();
+        }
+        return idle;
+    }
+
+    /**
+     * @return the number of validators currently in use for all the cached schemas.
+     */
+    public int getValidatorPoolInUse() {
+        int inUse = 0;
+        for (CompiledSchema schema : compiledSchemas()) {
+            inUse += schema.getValidators().getInUse();
+        }
+        return inUse;
+    }
+
+    private List<CompiledSchema> compiledSchemas() {
+        List<FutureTask<CompiledSchema>> tasks;
+        synchronized (schemas) {
+            tasks = new ArrayList<>(schemas.values());
+        }
+
+        List<CompiledSchema> compiledSchemas = new ArrayList<>(tasks.size());
+        for (FutureTask<CompiledSchema> task : tasks) {
+            if (task.isDone()) {
+                try {
+                    compiledSchemas.add(task.get());
+                } catch (ExecutionException | InterruptedException e) {
+                    // Failed compilations are not part of the cache
+                }
+            }
+        }
+        return compiledSchemas;
+    }
+
+    public void clear() {
+        synchronized (schemas) {
+            schemas.clear();
+        }
+    }
+
+    /**
+     * Notified by {@link #get(String, Listener)} of how the schema has been obtained.
+     */
+    public interface Listener {
+
+        void hit();
+
+        /**
+         * @param micros time spent to compile the schema, in microseconds.
+         */
+        void compiled(long micros);
+    }
+
+    private static Schema compile(String xsdSchema, SchemaCatalog catalog) throws SAXException {
+        // Schema factory is not thread safe
+        SchemaFactory schemaFactory = SecureProcessing.configure(SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI));
+        if (catalog.isEmpty()) {
+            return schemaFactory.newSchema(new StreamSource(new StringReader(xsdSchema)));
+        }
+
+        schemaFactory.setResourceResolver(catalog);
+        SecureProcessing.allowResolvedSchemas(schemaFactory);
+        return schemaFactory.newSchema(new StreamSource(new StringReader(xsdSchema), catalog.getSystemId()));
+    }
+
+    /**
+     * @return the hexadecimal SHA-256 digest of the content.
+     */
+    public static String digest(String content) {
+        return hex(newDigest().digest(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String hex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    private static final class Key {
+
+        private final String digest;
+
+        private final SchemaCatalog catalog;
+
+        private Key(String digest, SchemaCatalog catalog) {
+            this.digest = digest;
+            this.catalog = catalog;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return digest.equals(key.digest) && catalog.equals(key.catalog);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(digest, catalog);
+        }
+    }
+
+    private static Exception toException(Throwable throwable) {
+        return throwable instanceof Exception ? (Exception) throwable : new Exception(throwable);
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+
+import javax.xml.XMLConstants;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In memory catalog of the schemas imported or included by an XSD schema, so that they are resolved without any I/O.
+ *
+ * A reference is looked up by its location, resolved against the location of the referencing schema, then by its
+ * namespace. A reference with a location missing from the catalog fails the compilation instead of being fetched.
+ *
+ * Catalogs are compared on their content, so that the {@link SchemaCache} shares the schemas compiled with equal
+ * catalogs.
+ *
+ * @author GraviteeSource Team
+ */
+public class SchemaCatalog implements LSResourceResolver {
+
+    public static final SchemaCatalog EMPTY = new SchemaCatalog(Collections.emptyMap(), Collections.emptyMap());
+
+    /**
+     * Base of the system ids given to the schemas of the catalog, so that relative locations can be resolved.
+     */
+    static final String SYSTEM_ID_BASE = "catalog:/";
+
+    private final Map<String, String> locations;
+
+    private final Map<String, String> namespaces;
+
+    /**
+     * @param locations schemas by location, relative to the root of the catalog or absolute.
+     * @param namespaces schemas by target namespace.
+     */
+    public SchemaCatalog(Map<String, String> locations, Map<String, String> namespaces) {
+        this.locations = new HashMap<>(locations.size());
+        for (Map.Entry<String, String> location : locations.entrySet()) {
+            this.locations.put(normalize(location.getKey()), location.getValue());
+        }
+        this.namespaces = new HashMap<>(namespaces);
+    }
+
+    public boolean isEmpty() {
+        return locations.isEmpty() && namespaces.isEmpty();
+    }
+
+    /**
+     * @return the system id of the root schema, which the relative locations it references are resolved against.
+     */
+    public String getSystemId() {
+        return SYSTEM_ID_BASE + "schema.xsd";
+    }
+
+    @Override
+    public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+        if (!XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(type)) {
+            return null;
+        }
+
+        if (systemId != null) {
+            String location = resolve(systemId, baseURI);
+            String schema = locations.get(location);
+            if (schema != null) {
+                return new CatalogInput(publicId, SYSTEM_ID_BASE + location, schema);
+            }
+        }
+        if (namespaceURI != null) {
+            String schema = namespaces.get(namespaceURI);
+            if (schema != null) {
+                // Relative locations referenced by a schema found by namespace are resolved from the root of the catalog
+                return new CatalogInput(publicId, SYSTEM_ID_BASE + "?namespace=" + namespaceURI, schema);
+            }
+        }
+        if (systemId != null) {
+            throw new IllegalArgumentException("Schema " + systemId + " is not in the schema catalog");
+        }
+        // An import without location is only a hint, the parser does not load anything
+        return null;
+    }
+
+    /**
+     * @return a digest of the content of the catalog.
+     */
+    String digest() {
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, String> location : new TreeMap<>(locations).entrySet()) {
+            content.append("location:").append(location.getKey()).append('\0')
+                    .append(SchemaCache.digest(location.getValue())).append('\0');
+        }
+        for (Map.Entry<String, String> namespace : new TreeMap<>(namespaces).entrySet()) {
+            content.append("namespace:").append(namespace.getKey()).append('\0')
+                    .append(SchemaCache.digest(namespace.getValue())).append('\0');
+        }
+        return SchemaCache.digest(content.toString());
+    }
+
+    private static String resolve(String systemId, String baseURI) {
+        try {
+            URI uri = new URI(systemId);
+            if (!uri.isAbsolute() && baseURI != null && baseURI.startsWith(SYSTEM_ID_BASE)) {
+                uri = new URI(baseURI).resolve(uri);
+            }
+            String location = uri.toString();
+            return normalize(location.startsWith(SYSTEM_ID_BASE) ? location.substring(SYSTEM_ID_BASE.length()) : location);
+        } catch (URISyntaxException e) {
+            return normalize(systemId);
+        }
+    }
+
+    private static String normalize(String location) {
+        String normalized;
+        try {
+            normalized = new URI(location.trim()).normalize().toString();
+        } catch (URISyntaxException e) {
+            normalized = location.trim();
+        }
+        // Locations escaping the root of the catalog are resolved from the root
+        while (normalized.startsWith("/") || normalized.startsWith("./") || normalized.startsWith("../")) {
+            normalized = normalized.substring(normalized.indexOf('/') + 1);
+        }
+        return normalized;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SchemaCatalog that = (SchemaCatalog) o;
+        return locations.equals(that.locations) && namespaces.equals(that.namespaces);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * locations.hashCode() + namespaces.hashCode();
+    }
+
+    private static final class CatalogInput implements LSInput {
+
+        private String publicId;
+
+        private String systemId;
+
+        private String stringData;
+
+        private CatalogInput(String publicId, String systemId, String stringData) {
+            this.publicId = publicId;
+            this.systemId = systemId;
+            this.stringData = stringData;
+        }
+
+        @Override
+        public Reader getCharacterStream() {
+            return null;
+        }
+
+        @Override
+        public void setCharacterStream(Reader characterStream) {
+        }
+
+        @Override
+        public InputStream getByteStream() {
+            return null;
+        }
+
+        @Override
+        public void setByteStream(InputStream byteStream) {
+        }
+
+        @Override
+        public String getStringData() {
+            return stringData;
+        }
+
+        @Override
+        public void setStringData(String stringData) {
+            this.stringData = stringData;
+        }
+
+        @Override
+        public String getSystemId() {
+            return systemId;
+        }
+
+        @Override
+        public void setSystemId(String systemId) {
+            this.systemId = systemId;
+        }
+
+        @Override
+        public String getPublicId() {
+            return publicId;
+        }
+
+        @Override
+        public void setPublicId(String publicId) {
+            this.publicId = publicId;
+        }
+
+        @Override
+        public String getBaseURI() {
+            return null;
+        }
+
+        @Override
+        public void setBaseURI(String baseURI) {
+        }
+
+        @Override
+        public String getEncoding() {
+            return null;
+        }
+
+        @Override
+        public void setEncoding(String encoding) {
+        }
+
+        @Override
+        public boolean getCertifiedText() {
+            return false;
+        }
+
+        @Override
+        public void setCertifiedText(boolean certifiedText) {
+        }
+    }
+}
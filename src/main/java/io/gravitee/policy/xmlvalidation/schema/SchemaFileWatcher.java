@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Reads XSD schemas from the file system, and compiles them again in the background when they change.
+ *
+ * Schema files are given relative to the root directory set by the operator with the {@value #ROOT_PROPERTY} system
+ * property: a path outside of it, through {@code ..} or a symbolic link, is rejected, and schema files are disabled
+ * when it is not set.
+ *
+ * A schema file is read along with the other {@code .xsd} files of its directory, which form the catalog its imports and
+ * includes are resolved from, by file name. Subdirectories are neither read nor watched. Files are read as UTF-8.
+ *
+ * The directories are watched by a single daemon thread. After a change, and a short delay letting the bundle be fully
+ * written, the bundle is read and compiled on that thread, then swapped atomically: until then, requests keep on being
+ * validated against the previous version. A version which can not be read or compiled is logged and ignored, so that the
+ * last good version stays active.
+ *
+ * Watched schemas are shared by all the APIs of the gateway. They are only weakly held, so that a schema file no policy
+ * uses anymore, after a redeployment for instance, stops being watched.
+ *
+ * @author GraviteeSource Team
+ */
+public class SchemaFileWatcher {
+
+    public static final String ROOT_PROPERTY = "gravitee.policy.xml-validation.schema-file.root";
+
+    public static final String RELOAD_DELAY_PROPERTY = "gravitee.policy.xml-validation.schema-file.reload-delay";
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaFileWatcher.class);
+
+    private static final String XSD_EXTENSION = ".xsd";
+
+    private static final long RELEASE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private static final SchemaFileWatcher INSTANCE = new SchemaFileWatcher(null, Long.getLong(RELOAD_DELAY_PROPERTY, 200));
+
+    private final Path root;
+
+    private final long reloadDelay;
+
+    private final Map<Path, SchemaReference> schemas = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<WatchedSchema> released = new ReferenceQueue<>();
+
+    private final Map<Path, WatchKey> directories = new HashMap<>();
+
+    private WatchService watchService;
+
+    /**
+     * @param root the root directory of the schema files, or {@code null} to read it from {@value #ROOT_PROPERTY}.
+     */
+    SchemaFileWatcher(Path root, long reloadDelay) {
+        this.root = root;
+        this.reloadDelay = reloadDelay;
+    }
+
+    public static SchemaFileWatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the schema read from the given file, reading and compiling it if it is not already watched. The schema is
+     * prepared for the given engine, now and after each reload.
+     *
+     * @param file the path of the schema file, relative to the root directory.
+     * @throws IllegalArgumentException if schema files are disabled, or if the file is outside of the root directory.
+     * @throws IOException              if the schema can not be read or watched.
+     * @throws InvalidSchemaException   if the schema does not compile.
+     */
+    public WatchedSchema watch(String file, ValidationEngine engine) throws IOException, SAXException {
+        Path path = resolve(file);
+        WatchedSchema schema = get(path);
+        if (schema == null) {
+            synchronized (this) {
+                release();
+                schema = get(path);
+                if (schema == null) {
+                    schema = new WatchedSchema(path);
+                    schema.load();
+                    register(schema.directory);
+                    schemas.put(path, new SchemaReference(schema, released));
+                }
+            }
+        }
+        schema.prepare(engine);
+        return schema;
+    }
+
+    /**
+     * @return the number of schemas still held by a policy.
+     */
+    public synchronized int size() {
+        release();
+        return schemas.size();
+    }
+
+    private WatchedSchema get(Path path) {
+        SchemaReference reference = schemas.get(path);
+        return reference == null ? null : reference.get();
+    }
+
+    private Path resolve(String file) throws IOException {
+        String configuredRoot = root != null ? root.toString() : System.getProperty(ROOT_PROPERTY);
+        if (configuredRoot == null || configuredRoot.trim().isEmpty()) {
+            throw new IllegalArgumentException("XSD schema files are disabled, the " + ROOT_PROPERTY + " system property is not set");
+        }
+        Path rootDirectory = Paths.get(configuredRoot.trim()).toRealPath();
+        Path relative = Paths.get(file);
+        Path path = rootDirectory.resolve(relative).normalize();
+        if (relative.isAbsolute() || !path.startsWith(rootDirectory) || !path.toRealPath().startsWith(rootDirectory)) {
+            throw new IllegalArgumentException("XSD schema file " + file + " is not a relative path inside the schema root directory");
+        }
+        return path;
+    }
+
+    /**
+     * Watches the directory, starting the watcher thread on first use.
+     */
+    private synchronized void register(Path directory) throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(this::run, "xml-validation-schema-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        if (!directories.containsKey(directory)) {
+            directories.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+        }
+    }
+
+    /**
+     * Forgets the schemas no policy holds anymore, and stops watching the directories left without any schema.
+     */
+    private synchronized void release() {
+        SchemaReference reference;
+        while ((reference = (SchemaReference) released.poll()) != null) {
+            schemas.remove(reference.file, reference);
+            Path directory = reference.directory;
+            if (schemas.values().stream().noneMatch(other -> other.directory.equals(directory))) {
+                WatchKey key = directories.remove(directory);
+                if (key != null) {
+                    key.cancel();
+                }
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.poll(RELEASE_INTERVAL, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    release();
+                    continue;
+                }
+                // Lets editors and deployment tools finish writing the bundle, so that it is reloaded once
+                Thread.sleep(reloadDelay);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Set<Path> changed = new HashSet<>();
+            do {
+                key.pollEvents();
+                changed.add((Path) key.watchable());
+                key.reset();
+            } while ((key = watchService.poll()) != null);
+
+            release();
+            for (SchemaReference reference : schemas.values()) {
+                WatchedSchema schema = reference.get();
+                if (schema != null && changed.contains(schema.directory)) {
+                    schema.reload();
+                }
+            }
+        }
+    }
+
+    private static final class SchemaReference extends WeakReference<WatchedSchema> {
+
+        private final Path file;
+
+        private final Path directory;
+
+        private SchemaReference(WatchedSchema schema, ReferenceQueue<WatchedSchema> queue) {
+            super(schema, queue);
+            this.file = schema.file;
+            this.directory = schema.directory;
+        }
+    }
+
+    /**
+     * The last good version of a schema file.
+     */
+    public static final class WatchedSchema {
+
+        private final Path file;
+
+        private final Path directory;
+
+        private final Set<ValidationEngine> engines = new CopyOnWriteArraySet<>();
+
+        private volatile SchemaRouter.Route route;
+
+        private volatile int version;
+
+        WatchedSchema(Path file) {
+            this.file = file;
+            this.directory = file.getParent();
+        }
+
+        /**
+         * @return the route of the active version. A request reading it once is validated against a single version.
+         */
+        public SchemaRouter.Route getRoute() {
+            return route;
+        }
+
+        /**
+         * @return the number of versions loaded so far, starting at 1.
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        /**
+         * Reads and compiles the schema again, keeping the active version if it fails.
+         *
+         * @return {@code true} if a new version is now active.
+         */
+        synchronized boolean reload() {
+            try {
+                return load();
+            } catch (IOException | SAXException | RuntimeException e) {
+                logger.warn("Unable to reload XSD schema {}, version {} stays active: {}", file, version, e.getMessage());
+                return false;
+            }
+        }
+
+        private synchronized boolean load() throws IOException, SAXException {
+            String xsdSchema = read(file);
+            Map<String, String> locations = new HashMap<>();
+            try (Stream<Path> paths = Files.list(directory)) {
+                // Symbolic links are skipped, so that the catalog does not read files outside of the root directory
+                Iterator<Path> iterator = paths
+                        .filter(path -> path.getFileName().toString().endsWith(XSD_EXTENSION)
+                                && Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+                        .iterator();
+                while (iterator.hasNext()) {
+                    Path path = iterator.next();
+                    locations.put(path.getFileName().toString(), read(path));
+                }
+            }
+
+            CompiledSchema schema = SchemaCache.getInstance().get(xsdSchema, new SchemaCatalog(locations, Collections.emptyMap()), null);
+            if (route != null && route.getSchema().getDigest().equals(schema.getDigest())) {
+                return false;
+            }
+            for (ValidationEngine engine : engines) {
+                engine.prepare(schema);
+            }
+            // Compiled off the request path, so that requests only see a cache hit
+            route = new SchemaRouter.Route(schema, new SchemaLookup());
+            version++;
+            if (version > 1) {
+                logger.info("XSD schema {} reloaded, version {} is now active", file, version);
+            }
+            return true;
+        }
+
+        /**
+         * Synchronized with {@link #load()}, so that a version swapped in after the engine has been added is prepared
+         * for it too.
+         */
+        private synchronized void prepare(ValidationEngine engine) throws SAXException {
+            if (engines.add(engine)) {
+                engine.prepare(route.getSchema());
+            }
+        }
+
+        private static String read(Path path) throws IOException {
+            return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        }
+    }
+}
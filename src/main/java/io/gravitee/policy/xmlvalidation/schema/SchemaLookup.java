@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+/**
+ * Remembers how a schema has been obtained from the {@link SchemaCache}, so that it can be reported later, once the
+ * request being processed is known.
+ *
+ * @author GraviteeSource Team
+ */
+public class SchemaLookup implements SchemaCache.Listener {
+
+    private long compileTime = -1;
+
+    @Override
+    public void hit() {
+        compileTime = -1;
+    }
+
+    @Override
+    public void compiled(long micros) {
+        compileTime = micros;
+    }
+
+    /**
+     * Notifies the listener of the recorded lookup.
+     */
+    public void replay(SchemaCache.Listener listener) {
+        if (compileTime < 0) {
+            listener.hit();
+        } else {
+            listener.compiled(compileTime);
+        }
+    }
+}
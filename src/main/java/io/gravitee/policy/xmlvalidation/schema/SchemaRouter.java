@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.namespace.QName;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Selects the schema of a document from its root element.
+ *
+ * A schema mapped to the qualified name of the root element is preferred over a schema mapped to its namespace, which
+ * is preferred over the default schema.
+ *
+ * @author GraviteeSource Team
+ */
+public class SchemaRouter {
+
+    private final Supplier<Route> defaultRoute;
+
+    private final Map<QName, Route> rootElements = new HashMap<>();
+
+    private final Map<String, Route> namespaces = new HashMap<>();
+
+    /**
+     * @param defaultRoute the route of the documents matching no mapping, or {@code null} to reject them.
+     */
+    public SchemaRouter(Route defaultRoute) {
+        this.defaultRoute = () -> defaultRoute;
+    }
+
+    /**
+     * @param defaultRoute the supplier of the route of the documents matching no mapping, read again for each document,
+     *                     so that the default schema can be swapped while documents are validated.
+     */
+    public SchemaRouter(Supplier<Route> defaultRoute) {
+        this.defaultRoute = defaultRoute;
+    }
+
+    public void mapRootElement(QName rootElement, Route route) {
+        rootElements.put(rootElement, route);
+    }
+
+    public void mapNamespace(String namespace, Route route) {
+        namespaces.put(namespace, route);
+    }
+
+    /**
+     * @return {@code true} if every document is validated against the default schema, so that the root element does
+     * not need to be read beforehand.
+     */
+    public boolean isSingle() {
+        return rootElements.isEmpty() && namespaces.isEmpty();
+    }
+
+    public Route getDefault() {
+        return defaultRoute.get();
+    }
+
+    /**
+     * @return the route of a document with the given root element. If there is none, the violation is reported to the
+     * error handler and a {@link SAXParseException} is thrown.
+     */
+    public Route route(QName rootElement, ErrorHandler errorHandler) throws SAXException {
+        Route route = rootElements.get(rootElement);
+        if (route == null) {
+            route = namespaces.get(rootElement.getNamespaceURI());
+        }
+        if (route == null) {
+            route = defaultRoute.get();
+        }
+        if (route == null) {
+            SAXParseException exception = new SAXParseException("No XSD schema is mapped to the root element " + rootElement, null);
+            errorHandler.error(exception);
+            throw exception;
+        }
+        return route;
+    }
+
+    /**
+     * A compiled schema, along with the way it has been obtained from the {@link SchemaCache}.
+     */
+    public static final class Route {
+
+        private final CompiledSchema schema;
+
+        private final SchemaLookup lookup;
+
+        public Route(CompiledSchema schema, SchemaLookup lookup) {
+            this.schema = schema;
+            this.lookup = lookup;
+        }
+
+        public CompiledSchema getSchema() {
+            return schema;
+        }
+
+        public SchemaLookup getLookup() {
+            return lookup;
+        }
+    }
+}
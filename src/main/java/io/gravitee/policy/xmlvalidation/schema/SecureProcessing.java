@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.validation.SchemaFactory;
+
+/**
+ * Hardens the schema factory: secure processing is enabled, which bounds entity expansion, and external DTDs and
+ * schemas can not be fetched. The validators created from the compiled schemas inherit these settings.
+ *
+ * Settings which are not supported by the JAXP implementation in use are skipped with a warning.
+ *
+ * @author GraviteeSource Team
+ */
+final class SecureProcessing {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecureProcessing.class);
+
+    private SecureProcessing() {
+    }
+
+    static SchemaFactory configure(SchemaFactory schemaFactory) {
+        try {
+            schemaFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+            LOGGER.warn("Secure processing is not supported by {}", schemaFactory.getClass().getName());
+        }
+        try {
+            schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+            LOGGER.warn("External access restriction is not supported by {}", schemaFactory.getClass().getName());
+        }
+        return schemaFactory;
+    }
+
+    /**
+     * Same hardening for the parser reading the XSD schemas of the engines which do not compile them with JAXP: external
+     * DTDs and entities are neither loaded nor expanded.
+     */
+    static SAXParserFactory configure(SAXParserFactory parserFactory) {
+        parserFactory.setNamespaceAware(true);
+        try {
+            parserFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            parserFactory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            parserFactory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+            parserFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        } catch (ParserConfigurationException | SAXNotRecognizedException | SAXNotSupportedException e) {
+            LOGGER.warn("External access restriction is not supported by {}", parserFactory.getClass().getName());
+        }
+        return parserFactory;
+    }
+
+    /**
+     * Lets the factory read the schemas returned by its {@link SchemaCatalog} resolver. Some JAXP implementations apply
+     * the external access restriction to the resolved schemas too, even though they are not fetched. The catalog fails
+     * on the locations it does not hold, so that nothing is fetched anyway.
+     */
+    static void allowResolvedSchemas(SchemaFactory schemaFactory) {
+        try {
+            schemaFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "all");
+        } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+            LOGGER.warn("External access restriction is not supported by {}", schemaFactory.getClass().getName());
+        }
+    }
+}
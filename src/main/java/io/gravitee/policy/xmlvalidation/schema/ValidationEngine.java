@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Validates whole payloads against a {@link CompiledSchema}. Engines are thread safe and shared by every API.
+ *
+ * An engine only validates the buffered payloads. Streaming, fragment and compressed payloads are validated while they
+ * are parsed, by the JAXP validator handler of the schema.
+ *
+ * @author GraviteeSource Team
+ */
+public interface ValidationEngine {
+
+    /**
+     * Prepares the engine specific form of the schema, so that a schema the engine does not support is reported when
+     * the policy is created rather than on the first payload.
+     *
+     * @throws SAXException if the engine can not compile the schema.
+     */
+    void prepare(CompiledSchema schema) throws SAXException;
+
+    /**
+     * Validates the payload, reporting its errors to the error handler.
+     */
+    void validate(CompiledSchema schema, InputStream payload, ErrorHandler errorHandler) throws SAXException, IOException;
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Fails on the first error, like the default JAXP behavior, and remembers whether the failure was a schema violation
+ * rather than a malformed document.
+ *
+ * @author GraviteeSource Team
+ */
+public class ValidationErrorHandler implements ErrorHandler {
+
+    boolean schemaViolation;
+
+    @Override
+    public void warning(SAXParseException exception) {
+    }
+
+    @Override
+    public void error(SAXParseException exception) throws SAXException {
+        schemaViolation = true;
+        throw exception;
+    }
+
+    @Override
+    public void fatalError(SAXParseException exception) throws SAXException {
+        throw exception;
+    }
+
+    public boolean hasSchemaViolation() {
+        return schemaViolation;
+    }
+}
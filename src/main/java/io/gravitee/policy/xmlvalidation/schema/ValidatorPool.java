@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, lock-free pool of {@link Validator} for a given {@link Schema}.
+ *
+ * A {@link Validator} is not thread safe, so an instance is only ever used by the thread which acquired it. Instances
+ * are reset when they are released and discarded when the pool already holds {@code maxIdle} idle validators.
+ *
+ * @author GraviteeSource Team
+ */
+public class ValidatorPool {
+
+    public static final String MAX_IDLE_PROPERTY = "gravitee.policy.xml-validation.validator-pool.max-idle";
+
+    static final int DEFAULT_MAX_IDLE = Integer.getInteger(MAX_IDLE_PROPERTY, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final Schema schema;
+
+    private final int maxIdle;
+
+    private final Queue<Validator> idle = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    private final LongAdder created = new LongAdder();
+
+    private final LongAdder reused = new LongAdder();
+
+    private final LongAdder discarded = new LongAdder();
+
+    public ValidatorPool(Schema schema) {
+        this(schema, DEFAULT_MAX_IDLE);
+    }
+
+    public ValidatorPool(Schema schema, int maxIdle) {
+        this.schema = schema;
+        this.maxIdle = maxIdle;
+    }
+
+    public Validator acquire() {
+        inUse.incrementAndGet();
+
+        Validator validator = idle.poll();
+        if (validator != null) {
+            idleCount.decrementAndGet();
+            reused.increment();
+            return validator;
+        }
+
+        created.increment();
+        return schema.newValidator();
+    }
+
+    public void release(Validator validator) {
+        inUse.decrementAndGet();
+
+        try {
+            validator.reset();
+            // Reset does not guarantee the handlers to be restored
+            validator.setErrorHandler(null);
+            validator.setResourceResolver(null);
+        } catch (RuntimeException e) {
+            discarded.increment();
+            return;
+        }
+
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(validator);
+        } else {
+            idleCount.decrementAndGet();
+            discarded.increment();
+        }
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * @return the number of validators waiting in the pool.
+     */
+    public int getIdle() {
+        return idleCount.get();
+    }
+
+    /**
+     * @return the number of validators currently acquired and not yet released.
+     */
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    public long getReused() {
+        return reused.sum();
+    }
+
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM wide cache of the validation verdicts of payloads, keyed by the validation engine, the digest of the schema and
+ * the SHA-256 digest of the payload, so that a payload received again is not parsed again. Engines are part of the key
+ * since their verdicts and messages may differ.
+ *
+ * The cache is bounded with a LRU eviction, and a verdict expires after a time to live, so that the cache does not
+ * hold the verdicts of one-off payloads forever.
+ *
+ * @author GraviteeSource Team
+ */
+public class VerdictCache {
+
+    public static final String MAX_SIZE_PROPERTY = "gravitee.policy.xml-validation.verdict-cache.max-size";
+
+    public static final String TTL_PROPERTY = "gravitee.policy.xml-validation.verdict-cache.ttl";
+
+    private static final int DEFAULT_MAX_SIZE = 10_000;
+
+    private static final long DEFAULT_TTL_SECONDS = 300;
+
+    private static final VerdictCache INSTANCE = new VerdictCache(Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE),
+            TimeUnit.SECONDS.toNanos(Long.getLong(TTL_PROPERTY, DEFAULT_TTL_SECONDS)));
+
+    private final Map<String, Verdict> verdicts;
+
+    private final long ttl;
+
+    VerdictCache(final int maxSize, long ttlNanos) {
+        this.ttl = ttlNanos;
+        this.verdicts = new LinkedHashMap<String, Verdict>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static VerdictCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the verdict of the payload, or {@code null} if it is not cached or has expired.
+     */
+    public Verdict get(ValidationEngine engine, String schemaDigest, String payloadDigest) {
+        String key = key(engine, schemaDigest, payloadDigest);
+        synchronized (verdicts) {
+            Verdict verdict = verdicts.get(key);
+            if (verdict != null && System.nanoTime() - verdict.created > ttl) {
+                verdicts.remove(key);
+                return null;
+            }
+            return verdict;
+        }
+    }
+
+    public void put(ValidationEngine engine, String schemaDigest, String payloadDigest, Verdict verdict) {
+        synchronized (verdicts) {
+            verdicts.put(key(engine, schemaDigest, payloadDigest), verdict);
+        }
+    }
+
+    public int size() {
+        synchronized (verdicts) {
+            return verdicts.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (verdicts) {
+            verdicts.clear();
+        }
+    }
+
+    /**
+     * @return a new digest to update with the payload bytes as they are received.
+     */
+    public static MessageDigest payloadDigest() {
+        return SchemaCache.newDigest();
+    }
+
+    public static String toString(MessageDigest payloadDigest) {
+        return SchemaCache.hex(payloadDigest.digest());
+    }
+
+    private static String key(ValidationEngine engine, String schemaDigest, String payloadDigest) {
+        return engine.getClass().getName() + ':' + schemaDigest + ':' + payloadDigest;
+    }
+
+    /**
+     * Result of the validation of a payload. Only the verdicts which depend on the payload alone, valid, malformed or
+     * breaking the schema, should be cached.
+     */
+    public static final class Verdict {
+
+        private final boolean valid;
+
+        private final boolean schemaViolation;
+
+        private final String message;
+
+        private final long created = System.nanoTime();
+
+        private Verdict(boolean valid, boolean schemaViolation, String message) {
+            this.valid = valid;
+            this.schemaViolation = schemaViolation;
+            this.message = message;
+        }
+
+        public static Verdict valid() {
+            return new Verdict(true, false, null);
+        }
+
+        public static Verdict invalid(SAXException failure, ValidationErrorHandler errorHandler) {
+            return new Verdict(false, errorHandler.hasSchemaViolation(), failure.getMessage());
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * @return the failure of an invalid payload, as reported when it was validated, the error handler remembering
+         * whether it was a schema violation.
+         */
+        public SAXException failure(ValidationErrorHandler errorHandler) {
+            errorHandler.schemaViolation = schemaViolation;
+            return new SAXParseException(message, null);
+        }
+    }
+}
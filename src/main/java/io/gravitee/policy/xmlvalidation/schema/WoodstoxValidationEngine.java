@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import com.ctc.wstx.msv.W3CSchema;
+import com.ctc.wstx.shaded.msv_core.grammar.xmlschema.XMLSchemaGrammar;
+import com.ctc.wstx.shaded.msv_core.reader.GrammarReaderController2;
+import com.ctc.wstx.shaded.msv_core.reader.xmlschema.XMLSchemaReader;
+import com.ctc.wstx.stax.WstxInputFactory;
+import org.codehaus.stax2.XMLInputFactory2;
+import org.codehaus.stax2.XMLStreamReader2;
+import org.codehaus.stax2.validation.ValidationProblemHandler;
+import org.codehaus.stax2.validation.XMLValidationException;
+import org.codehaus.stax2.validation.XMLValidationProblem;
+import org.codehaus.stax2.validation.XMLValidationSchema;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Validates with the Woodstox StAX parser, which checks each event against the schema while it reads the payload,
+ * without a separate SAX pipeline.
+ *
+ * The XSD is compiled once more by the MSV copy shipped with Woodstox, which supports most of XML Schema 1.0. The
+ * imported and included schemas are only read from the {@link SchemaCatalog}, by location. The compiled forms are
+ * held as long as the {@link CompiledSchema} itself.
+ *
+ * @author GraviteeSource Team
+ */
+public class WoodstoxValidationEngine implements ValidationEngine {
+
+    private static final WoodstoxValidationEngine INSTANCE = new WoodstoxValidationEngine();
+
+    private final XMLInputFactory2 inputFactory;
+
+    private final SAXParserFactory parserFactory;
+
+    private final Map<CompiledSchema, XMLValidationSchema> schemas = Collections.synchronizedMap(new WeakHashMap<>());
+
+    WoodstoxValidationEngine() {
+        inputFactory = new WstxInputFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        parserFactory = SecureProcessing.configure(SAXParserFactory.newInstance());
+    }
+
+    public static WoodstoxValidationEngine getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void prepare(CompiledSchema schema) throws SAXException {
+        schema(schema);
+    }
+
+    @Override
+    public void validate(CompiledSchema schema, InputStream payload, ErrorHandler errorHandler) throws SAXException {
+        XMLValidationSchema validationSchema = schema(schema);
+        ProblemHandler problemHandler = new ProblemHandler(errorHandler);
+        XMLStreamReader2 reader = null;
+        try {
+            reader = (XMLStreamReader2) inputFactory.createXMLStreamReader(payload);
+            reader.setValidationProblemHandler(problemHandler);
+            reader.validateAgainst(validationSchema);
+            while (reader.hasNext()) {
+                reader.next();
+            }
+        } catch (XMLStreamException e) {
+            if (problemHandler.failure != null) {
+                throw problemHandler.failure;
+            }
+            SAXParseException exception = toSAXException(e);
+            errorHandler.fatalError(exception);
+            throw exception;
+        } finally {
+            close(reader);
+        }
+    }
+
+    private XMLValidationSchema schema(CompiledSchema schema) throws SAXException {
+        XMLValidationSchema validationSchema = schemas.get(schema);
+        if (validationSchema == null) {
+            // Concurrent compilations of a new schema are harmless, the last one wins
+            validationSchema = compile(schema);
+            schemas.put(schema, validationSchema);
+        }
+        return validationSchema;
+    }
+
+    private XMLValidationSchema compile(CompiledSchema schema) throws SAXException {
+        InputSource source = new InputSource(new StringReader(schema.getXsdSchema()));
+        source.setSystemId(CatalogController.toMsv(schema.getCatalog().getSystemId()));
+        CatalogController controller = new CatalogController(schema.getCatalog());
+
+        XMLSchemaGrammar grammar = XMLSchemaReader.parse(source, parserFactory, controller);
+        if (grammar == null) {
+            throw new InvalidSchemaException("XSD schema not supported by the Woodstox engine: " + controller.error,
+                    controller.cause);
+        }
+        return new W3CSchema(grammar);
+    }
+
+    private static void close(XMLStreamReader2 reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // Nothing was allocated which would not be garbage collected
+            }
+        }
+    }
+
+    private static SAXParseException toSAXException(XMLStreamException e) {
+        Location location = e.getLocation();
+        return location == null ? new SAXParseException(e.getMessage(), null, e) :
+                new SAXParseException(e.getMessage(), null, null, location.getLineNumber(), location.getColumnNumber(), e);
+    }
+
+    /**
+     * Reports the validation problems to the error handler, which decides whether to go on. The first exception it
+     * throws is kept, to be rethrown once Woodstox has unwound the parsing.
+     */
+    private static class ProblemHandler implements ValidationProblemHandler {
+
+        private final ErrorHandler errorHandler;
+
+        private SAXException failure;
+
+        private ProblemHandler(ErrorHandler errorHandler) {
+            this.errorHandler = errorHandler;
+        }
+
+        @Override
+        public void reportProblem(XMLValidationProblem problem) throws XMLValidationException {
+            Location location = problem.getLocation();
+            SAXParseException exception = location == null ? new SAXParseException(problem.getMessage(), null) :
+                    new SAXParseException(problem.getMessage(), null, null, location.getLineNumber(), location.getColumnNumber());
+            try {
+                if (problem.getSeverity() == XMLValidationProblem.SEVERITY_WARNING) {
+                    errorHandler.warning(exception);
+                } else {
+                    errorHandler.error(exception);
+                }
+            } catch (SAXException e) {
+                failure = e;
+                throw XMLValidationException.createException(problem);
+            }
+        }
+    }
+
+    /**
+     * Resolves the imported and included schemas from the catalog only, so that MSV never fetches them, and keeps the
+     * first compilation error.
+     *
+     * MSV only resolves relative locations against HTTP like base URIs, so the catalog system ids are handed to MSV
+     * under a reserved host which can never be reached, and mapped back on resolution.
+     */
+    private static class CatalogController implements GrammarReaderController2 {
+
+        private static final String MSV_SYSTEM_ID_BASE = "http://catalog.invalid/";
+
+        private final SchemaCatalog catalog;
+
+        private String error;
+
+        private Exception cause;
+
+        private CatalogController(SchemaCatalog catalog) {
+            this.catalog = catalog;
+        }
+
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) throws SAXException {
+            LSInput input;
+            try {
+                input = systemId == null ? null :
+                        catalog.resolveResource(XMLConstants.W3C_XML_SCHEMA_NS_URI, null, publicId, fromMsv(systemId), null);
+            } catch (IllegalArgumentException e) {
+                throw new SAXException(e.getMessage());
+            }
+            if (input == null) {
+                throw new SAXException("Schema " + systemId + " is not in the schema catalog");
+            }
+
+            InputSource source = new InputSource(new StringReader(input.getStringData()));
+            source.setPublicId(input.getPublicId());
+            source.setSystemId(toMsv(input.getSystemId()));
+            return source;
+        }
+
+        private static String toMsv(String systemId) {
+            return MSV_SYSTEM_ID_BASE + systemId.substring(SchemaCatalog.SYSTEM_ID_BASE.length());
+        }
+
+        private static String fromMsv(String systemId) {
+            return systemId.startsWith(MSV_SYSTEM_ID_BASE) ?
+                    SchemaCatalog.SYSTEM_ID_BASE + systemId.substring(MSV_SYSTEM_ID_BASE.length()) : systemId;
+        }
+
+        @Override
+        public LSResourceResolver getLSResourceResolver() {
+            // MSV then resolves the locations against their base itself, and asks for them through resolveEntity
+            return null;
+        }
+
+        @Override
+        public void warning(Locator[] locators, String message) {
+        }
+
+        @Override
+        public void error(Locator[] locators, String message, Exception exception) {
+            if (error == null) {
+                error = message;
+                cause = exception;
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import com.fasterxml.aalto.AsyncByteArrayFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import com.fasterxml.aalto.util.CharsetNames;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Non-blocking XML parser fed chunk by chunk, which pushes the parsed document as SAX events to a {@link ContentHandler}.
+ *
+ * Each call to {@link #feed(byte[], int, int)} parses as much of the document as the available bytes allow, so a
+ * malformed document, or a document rejected by the handler, fails as soon as the offending bytes are received.
+ *
+ * The encoding is detected from the XML declaration. Only UTF-8, ISO-8859-1 and US-ASCII are supported: a document
+ * declaring another encoding, or starting with UTF-16 encoded bytes, is rejected with an
+ * {@link UnsupportedXmlEncodingException} before any byte is parsed.
+ *
+ * The {@link XmlLimits} are checked on each parsed event, so that a hostile document is rejected as soon as it exceeds
+ * one of them, whatever its total size.
+ *
+ * An instance parses a single document and is not thread safe.
+ *
+ * @author GraviteeSource Team
+ */
+public class AsyncXmlParser {
+
+    private static final AsyncXMLInputFactory FACTORY = new InputFactoryImpl();
+
+    private static final Set<String> SUPPORTED_ENCODINGS = new HashSet<>(Arrays.asList(
+            CharsetNames.CS_UTF8, CharsetNames.CS_ISO_LATIN1, CharsetNames.CS_US_ASCII));
+
+    private static final byte[] XML_DECLARATION = "<?xml".getBytes(StandardCharsets.US_ASCII);
+
+    private static final Pattern ENCODING_DECLARATION = Pattern.compile("encoding\\s*=\\s*[\"']([^\"']*)[\"']");
+
+    /**
+     * Length past which a document whose XML declaration is still not closed is left to the parser to reject.
+     */
+    private static final int MAX_DECLARATION_LENGTH = 1024;
+
+    private final AsyncXMLStreamReader<AsyncByteArrayFeeder> reader;
+
+    private final ContentHandler handler;
+
+    private final XmlLimits limits;
+
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    /**
+     * The first bytes, held until they tell the encoding of the document, or {@code null} once it is known.
+     */
+    private byte[] prolog = new byte[0];
+
+    private boolean started;
+
+    private int depth;
+
+    private int elements;
+
+    private int textLength;
+
+    /**
+     * Creates a parser which only checks that the document is well-formed.
+     */
+    public AsyncXmlParser() {
+        this(null, XmlLimits.NONE);
+    }
+
+    public AsyncXmlParser(ContentHandler handler) {
+        this(handler, XmlLimits.NONE);
+    }
+
+    /**
+     * @param handler the handler receiving the parsed document, or {@code null} to only check that the document is
+     *                well-formed and within the limits.
+     */
+    public AsyncXmlParser(ContentHandler handler, XmlLimits limits) {
+        this.reader = FACTORY.createAsyncForByteArray();
+        this.handler = handler;
+        this.limits = limits;
+    }
+
+    public void feed(byte[] bytes) throws SAXException {
+        feed(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses the given bytes. The array must not be modified until this method returns.
+     */
+    public void feed(byte[] bytes, int offset, int length) throws SAXException {
+        if (prolog != null) {
+            if (prolog.length > 0) {
+                byte[] head = Arrays.copyOf(prolog, prolog.length + length);
+                System.arraycopy(bytes, offset, head, prolog.length, length);
+                bytes = head;
+                offset = 0;
+                length = head.length;
+            }
+            if (!checkEncoding(bytes, offset, length, false)) {
+                prolog = Arrays.copyOfRange(bytes, offset, offset + length);
+                return;
+            }
+            prolog = null;
+        }
+        try {
+            reader.getInputFeeder().feedInput(bytes, offset, length);
+        } catch (XMLStreamException e) {
+            throw toSAXException(e);
+        }
+        parse();
+    }
+
+    /**
+     * Signals the end of the document. Fails if the document is incomplete.
+     */
+    public void end() throws SAXException {
+        if (prolog != null) {
+            byte[] head = prolog;
+            checkEncoding(head, 0, head.length, true);
+            prolog = null;
+            if (head.length > 0) {
+                feed(head, 0, head.length);
+            }
+        }
+        reader.getInputFeeder().endOfInput();
+        parse();
+
+        if (reader.getEventType() != XMLStreamConstants.END_DOCUMENT) {
+            throw new SAXParseException("Premature end of document", locator());
+        }
+    }
+
+    private void parse() throws SAXException {
+        try {
+            int event;
+            while (reader.hasNext() && (event = reader.next()) != AsyncXMLStreamReader.EVENT_INCOMPLETE) {
+                // Checked before the limits and the handler, so that the well-formedness check alone rejects it
+                if (event == XMLStreamConstants.ENTITY_REFERENCE) {
+                    throw undeclaredEntity();
+                }
+                if (limits.isEnabled()) {
+                    checkLimits(event);
+                }
+                if (handler == null) {
+                    continue;
+                }
+                if (!started) {
+                    started = true;
+                    handler.setDocumentLocator(locator());
+                    handler.startDocument();
+                }
+                handle(event);
+            }
+        } catch (XMLStreamException e) {
+            throw toSAXException(e);
+        }
+    }
+
+    private void handle(int event) throws SAXException {
+        switch (event) {
+            case XMLStreamConstants.START_ELEMENT:
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    handler.startPrefixMapping(nonNull(reader.getNamespacePrefix(i)), nonNull(reader.getNamespaceURI(i)));
+                }
+                attributes.clear();
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    String prefix = reader.getAttributePrefix(i);
+                    String localName = reader.getAttributeLocalName(i);
+                    attributes.addAttribute(nonNull(reader.getAttributeNamespace(i)), localName,
+                            qName(prefix, localName), reader.getAttributeType(i), reader.getAttributeValue(i));
+                }
+                handler.startElement(nonNull(reader.getNamespaceURI()), reader.getLocalName(),
+                        qName(reader.getPrefix(), reader.getLocalName()), attributes);
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                handler.endElement(nonNull(reader.getNamespaceURI()), reader.getLocalName(),
+                        qName(reader.getPrefix(), reader.getLocalName()));
+                for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                    handler.endPrefixMapping(nonNull(reader.getNamespacePrefix(i)));
+                }
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                handler.characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.SPACE:
+                handler.ignorableWhitespace(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                handler.processingInstruction(reader.getPITarget(), reader.getPIData());
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                handler.endDocument();
+                break;
+            default:
+                // Comments, DTD and document start do not carry anything to validate
+                break;
+        }
+    }
+
+    private void checkLimits(int event) throws SAXException {
+        switch (event) {
+            case XMLStreamConstants.START_ELEMENT:
+                textLength = 0;
+                if (limits.getMaxDepth() > 0 && ++depth > limits.getMaxDepth()) {
+                    throw new LimitExceededException("Element depth exceeds the limit of " + limits.getMaxDepth(), locator());
+                }
+                if (limits.getMaxElements() > 0 && ++elements > limits.getMaxElements()) {
+                    throw new LimitExceededException("Element count exceeds the limit of " + limits.getMaxElements(), locator());
+                }
+                if (limits.getMaxAttributes() > 0 && reader.getAttributeCount() > limits.getMaxAttributes()) {
+                    throw new LimitExceededException("Attribute count exceeds the limit of " + limits.getMaxAttributes(), locator());
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                textLength = 0;
+                depth--;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                // A text node may be reported in several parts
+                textLength += reader.getTextLength();
+                if (limits.getMaxTextLength() > 0 && textLength > limits.getMaxTextLength()) {
+                    throw new LimitExceededException("Text length exceeds the limit of " + limits.getMaxTextLength(), locator());
+                }
+                break;
+            case XMLStreamConstants.DTD:
+                if (limits.isRejectDoctype()) {
+                    throw new LimitExceededException("DOCTYPE declarations are not allowed", locator());
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Entities are never expanded, since neither the internal nor the external DTD subsets are read, so an entity
+     * reference would reach the backend without having been validated.
+     */
+    private SAXParseException undeclaredEntity() {
+        return new SAXParseException("The entity \"" + reader.getLocalName() + "\" was referenced, but not declared", locator());
+    }
+
+    private Locator locator() {
+        return new Locator() {
+            @Override
+            public String getPublicId() {
+                return null;
+            }
+
+            @Override
+            public String getSystemId() {
+                return null;
+            }
+
+            @Override
+            public int getLineNumber() {
+                return reader.getLocation().getLineNumber();
+            }
+
+            @Override
+            public int getColumnNumber() {
+                return reader.getLocation().getColumnNumber();
+            }
+        };
+    }
+
+    /**
+     * @param complete whether the given bytes are the whole document.
+     * @return {@code false} if more bytes are needed to tell the encoding of the document, {@code true} if it is
+     * supported.
+     * @throws UnsupportedXmlEncodingException if the encoding is not supported.
+     */
+    private static boolean checkEncoding(byte[] bytes, int offset, int length, boolean complete)
+            throws UnsupportedXmlEncodingException {
+        String encoding = encoding(bytes, offset, length, complete);
+        if (encoding == null) {
+            return false;
+        }
+        if (!encoding.isEmpty() && !isSupported(encoding)) {
+            throw new UnsupportedXmlEncodingException(encoding);
+        }
+        return true;
+    }
+
+    /**
+     * @return the encoding declared by the document, {@code UTF-16} if its first bytes are UTF-16 encoded, an empty
+     * string if it declares none, or {@code null} if more bytes are needed to tell.
+     */
+    static String encoding(byte[] bytes, int offset, int length, boolean complete) {
+        if (length < 2) {
+            return complete ? "" : null;
+        }
+        int first = bytes[offset] & 0xFF;
+        int second = bytes[offset + 1] & 0xFF;
+        // Byte order marks, or a '<' encoded on two bytes
+        if ((first == 0xFE && second == 0xFF) || (first == 0xFF && second == 0xFE) || first == 0 || second == 0) {
+            return "UTF-16";
+        }
+
+        int end = offset + length;
+        int start = length >= 3 && first == 0xEF && second == 0xBB && (bytes[offset + 2] & 0xFF) == 0xBF ? offset + 3 : offset;
+        for (int i = 0; i < XML_DECLARATION.length; i++) {
+            if (start + i >= end) {
+                return complete ? "" : null;
+            }
+            if (bytes[start + i] != XML_DECLARATION[i]) {
+                return "";
+            }
+        }
+        for (int i = start + XML_DECLARATION.length; i < end - 1; i++) {
+            if (bytes[i] == '?' && bytes[i + 1] == '>') {
+                Matcher matcher = ENCODING_DECLARATION.matcher(new String(bytes, start, i - start, StandardCharsets.ISO_8859_1));
+                return matcher.find() ? matcher.group(1) : "";
+            }
+        }
+        return complete || length > MAX_DECLARATION_LENGTH ? "" : null;
+    }
+
+    /**
+     * Normalizes the encoding the way the parser does, so that an alias it supports is not rejected.
+     */
+    private static boolean isSupported(String encoding) {
+        return SUPPORTED_ENCODINGS.contains(CharsetNames.normalize(encoding));
+    }
+
+    private static SAXParseException toSAXException(XMLStreamException e) {
+        Location location = e.getLocation();
+        return location == null ? new SAXParseException(e.getMessage(), null, e) :
+                new SAXParseException(e.getMessage(), null, null, location.getLineNumber(), location.getColumnNumber(), e);
+    }
+
+    private static String qName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.ctc.wstx.stax.WstxOutputFactory;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Splits a batch payload into its items: the child elements of the element found at a path, such as the
+ * {@code order} elements of a {@code batch}. The payload is read with a stream reader, and each item is written again
+ * as a standalone UTF-8 document, as soon as it has been read.
+ *
+ * The namespaces declared by the ancestors of an item are declared again on its root element, so that the item is read
+ * as it is in the batch. Paths are written as for {@link FragmentContentHandler}.
+ *
+ * @author GraviteeSource Team
+ */
+public final class BatchSplitter {
+
+    private static final XMLInputFactory INPUT_FACTORY = new WstxInputFactory();
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = new WstxOutputFactory();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private BatchSplitter() {
+    }
+
+    /**
+     * Reads the payload and hands its items to the consumer, in document order, until the consumer asks to stop.
+     *
+     * @param path the path of the parent of the items, as returned by {@link FragmentContentHandler#parsePath(String)}.
+     * @return the number of items handed to the consumer.
+     * @throws SAXParseException if the payload is malformed, or has no element at the path.
+     */
+    public static int split(InputStream payload, List<QName> path, ItemConsumer consumer) throws SAXException {
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(payload);
+            NamespaceSupport namespaces = new NamespaceSupport();
+            int depth = 0;
+            int matched = 0;
+            boolean found = false;
+            int items = 0;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    namespaces.pushContext();
+                    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                        namespaces.declarePrefix(nonNull(reader.getNamespacePrefix(i)), nonNull(reader.getNamespaceURI(i)));
+                    }
+
+                    if (matched == path.size() && depth == matched + 1) {
+                        QName rootElement = new QName(nonNull(reader.getNamespaceURI()), reader.getLocalName());
+                        byte[] item = copy(reader, namespaces);
+                        namespaces.popContext();
+                        depth--;
+                        if (!consumer.accept(items++, rootElement, item)) {
+                            return items;
+                        }
+                    } else if (matched < path.size() && depth == matched + 1
+                            && FragmentContentHandler.matches(path.get(matched), nonNull(reader.getNamespaceURI()), reader.getLocalName())) {
+                        matched++;
+                        found |= matched == path.size();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == matched) {
+                        matched--;
+                    }
+                    depth--;
+                    namespaces.popContext();
+                }
+            }
+
+            if (!found) {
+                throw new SAXParseException("No element found at the batch path " + path, null);
+            }
+            return items;
+        } catch (XMLStreamException e) {
+            Location location = e.getLocation();
+            throw location == null ? new SAXParseException(e.getMessage(), null, e) :
+                    new SAXParseException(e.getMessage(), null, null, location.getLineNumber(), location.getColumnNumber(), e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Writes the element the reader is on, up to its end tag, as a standalone document.
+     */
+    private static byte[] copy(XMLStreamReader reader, NamespaceSupport namespaces) throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+        int level = 0;
+        int event = reader.getEventType();
+        do {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    writer.writeStartElement(nonNull(reader.getPrefix()), reader.getLocalName(), nonNull(reader.getNamespaceURI()));
+                    if (level == 0) {
+                        writeNamespaces(writer, namespaces);
+                    } else {
+                        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                            writer.writeNamespace(nonNull(reader.getNamespacePrefix(i)), nonNull(reader.getNamespaceURI(i)));
+                        }
+                    }
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        writer.writeAttribute(nonNull(reader.getAttributePrefix(i)), nonNull(reader.getAttributeNamespace(i)),
+                                reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                    }
+                    level++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    writer.writeEndElement();
+                    level--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                    break;
+                default:
+                    // Comments do not carry anything to validate
+                    break;
+            }
+        } while (level > 0 && (event = reader.next()) != XMLStreamConstants.END_DOCUMENT);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static void writeNamespaces(XMLStreamWriter writer, NamespaceSupport namespaces) throws XMLStreamException {
+        Enumeration<?> prefixes = namespaces.getPrefixes();
+        while (prefixes.hasMoreElements()) {
+            String prefix = (String) prefixes.nextElement();
+            if (!XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                writer.writeNamespace(prefix, namespaces.getURI(prefix));
+            }
+        }
+        String defaultNamespace = namespaces.getURI(XMLConstants.DEFAULT_NS_PREFIX);
+        if (defaultNamespace != null) {
+            writer.writeDefaultNamespace(defaultNamespace);
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // The payload stream is closed by its owner
+            }
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Receives the items of a batch.
+     */
+    @FunctionalInterface
+    public interface ItemConsumer {
+
+        /**
+         * @param index        the position of the item in the batch, starting at 0.
+         * @param rootElement  the root element of the item.
+         * @param item         the item, as a standalone UTF-8 document.
+         * @return {@code false} to stop reading the batch.
+         */
+        boolean accept(int index, QName rootElement, byte[] item) throws SAXException;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import io.gravitee.gateway.api.buffer.Buffer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * Gives access to the raw bytes of a gateway {@link Buffer} without decoding them, and without copying them when the
+ * buffer is backed by a Netty {@link ByteBuf}.
+ *
+ * @author GraviteeSource Team
+ */
+public final class Buffers {
+
+    private Buffers() {
+    }
+
+    /**
+     * @return a stream over the bytes of the buffer. Reading the stream does not move the buffer reader index.
+     */
+    public static InputStream inputStream(Buffer buffer) {
+        Object nativeBuffer = buffer.getNativeBuffer();
+        if (nativeBuffer instanceof ByteBuf) {
+            return new ByteBufInputStream(((ByteBuf) nativeBuffer).duplicate());
+        }
+        return new ByteArrayInputStream(buffer.getBytes());
+    }
+
+    /**
+     * Passes the bytes of the buffer to the given consumer, using the backing array of the buffer when it has one.
+     */
+    public static <E extends Exception> void consume(Buffer buffer, BytesConsumer<E> consumer) throws E {
+        Object nativeBuffer = buffer.getNativeBuffer();
+        if (nativeBuffer instanceof ByteBuf) {
+            ByteBuf byteBuf = (ByteBuf) nativeBuffer;
+            if (byteBuf.hasArray()) {
+                consumer.accept(byteBuf.array(), byteBuf.arrayOffset() + byteBuf.readerIndex(), byteBuf.readableBytes());
+                return;
+            }
+        }
+        byte[] bytes = buffer.getBytes();
+        consumer.accept(bytes, 0, bytes.length);
+    }
+
+    @FunctionalInterface
+    public interface BytesConsumer<E extends Exception> {
+
+        void accept(byte[] bytes, int offset, int length) throws E;
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Forwards to a handler, as a standalone document, only the fragment rooted at the first child element of the element
+ * found at a path, such as the payload of a SOAP {@code Body}. The rest of the document is skipped.
+ *
+ * The namespaces declared by the ancestors of the fragment are declared again on its root element, so that the
+ * fragment is read as it is in the document.
+ *
+ * A path is a list of steps separated by {@code /}. A step written {@code {namespace}localName} matches an element with
+ * this namespace, a step written {@code localName} matches an element in any namespace, and {@code *} matches any
+ * element. For instance, {@code /Envelope/Body} selects the payload of both SOAP 1.1 and SOAP 1.2 messages.
+ *
+ * An instance handles a single document and is not thread safe.
+ *
+ * @author GraviteeSource Team
+ */
+public class FragmentContentHandler implements ContentHandler {
+
+    private static final String ANY = "*";
+
+    private final List<QName> path;
+
+    private final ContentHandler handler;
+
+    private final NamespaceSupport namespaces = new NamespaceSupport();
+
+    private final List<String> fragmentPrefixes = new ArrayList<>(4);
+
+    private Locator locator;
+
+    private boolean contextPushed;
+
+    private int depth;
+
+    /**
+     * Number of the current ancestors matching the first steps of the path.
+     */
+    private int matched;
+
+    /**
+     * Depth of the root element of the fragment while it is forwarded, 0 otherwise.
+     */
+    private int fragmentDepth;
+
+    private boolean found;
+
+    /**
+     * @param path the path of the parent of the fragment, as returned by {@link #parsePath(String)}.
+     */
+    public FragmentContentHandler(List<QName> path, ContentHandler handler) {
+        this.path = path;
+        this.handler = handler;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the path is empty or malformed.
+     */
+    public static List<QName> parsePath(String path) {
+        List<QName> steps = new ArrayList<>();
+        int start = 0;
+        boolean inNamespace = false;
+        for (int i = 0; i <= path.length(); i++) {
+            char c = i < path.length() ? path.charAt(i) : '/';
+            if (c == '{') {
+                inNamespace = true;
+            } else if (c == '}') {
+                inNamespace = false;
+            } else if (c == '/' && !inNamespace) {
+                String step = path.substring(start, i).trim();
+                if (!step.isEmpty()) {
+                    steps.add(step(step));
+                }
+                start = i + 1;
+            }
+        }
+        if (inNamespace || steps.isEmpty()) {
+            throw new IllegalArgumentException("Invalid fragment path: " + path);
+        }
+        return Collections.unmodifiableList(steps);
+    }
+
+    private static QName step(String step) {
+        if (step.startsWith("{")) {
+            int end = step.indexOf('}');
+            String localName = step.substring(end + 1);
+            if (localName.isEmpty()) {
+                throw new IllegalArgumentException("Invalid fragment path step: " + step);
+            }
+            return new QName(step.substring(1, end), localName);
+        }
+        return new QName(ANY, step);
+    }
+
+    static boolean matches(QName step, String uri, String localName) {
+        return (ANY.equals(step.getNamespaceURI()) || step.getNamespaceURI().equals(uri))
+                && (ANY.equals(step.getLocalPart()) || step.getLocalPart().equals(localName));
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        this.locator = locator;
+    }
+
+    @Override
+    public void startDocument() {
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        if (!found) {
+            StringBuilder description = new StringBuilder();
+            for (QName step : path) {
+                description.append('/').append(ANY.equals(step.getNamespaceURI()) ? step.getLocalPart() : step.toString());
+            }
+            throw new SAXParseException("No element found under the fragment path " + description, locator);
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        if (fragmentDepth > 0) {
+            handler.startPrefixMapping(prefix, uri);
+        }
+        if (!contextPushed) {
+            namespaces.pushContext();
+            contextPushed = true;
+        }
+        namespaces.declarePrefix(prefix, uri);
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if (fragmentDepth > 0) {
+            handler.endPrefixMapping(prefix);
+        }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+        if (!contextPushed) {
+            namespaces.pushContext();
+        }
+        contextPushed = false;
+        depth++;
+
+        if (fragmentDepth > 0) {
+            handler.startElement(uri, localName, qName, atts);
+        } else if (!found) {
+            if (matched == path.size() && depth == matched + 1) {
+                startFragment();
+                handler.startElement(uri, localName, qName, atts);
+            } else if (matched == depth - 1 && depth <= path.size() && matches(path.get(matched), uri, localName)) {
+                matched = depth;
+            }
+        }
+    }
+
+    private void startFragment() throws SAXException {
+        found = true;
+        fragmentDepth = depth;
+        if (locator != null) {
+            handler.setDocumentLocator(locator);
+        }
+        handler.startDocument();
+
+        Enumeration<?> prefixes = namespaces.getPrefixes();
+        while (prefixes.hasMoreElements()) {
+            String prefix = (String) prefixes.nextElement();
+            if (!XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                fragmentPrefixes.add(prefix);
+            }
+        }
+        if (namespaces.getURI("") != null) {
+            fragmentPrefixes.add("");
+        }
+        for (String prefix : fragmentPrefixes) {
+            handler.startPrefixMapping(prefix, namespaces.getURI(prefix));
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (fragmentDepth > 0) {
+            handler.endElement(uri, localName, qName);
+            if (depth == fragmentDepth) {
+                for (String prefix : fragmentPrefixes) {
+                    handler.endPrefixMapping(prefix);
+                }
+                handler.endDocument();
+                fragmentDepth = 0;
+            }
+        }
+        if (matched == depth) {
+            matched--;
+        }
+        depth--;
+        namespaces.popContext();
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (fragmentDepth > 0) {
+            handler.characters(ch, start, length);
+        }
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (fragmentDepth > 0) {
+            handler.ignorableWhitespace(ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        if (fragmentDepth > 0) {
+            handler.processingInstruction(target, data);
+        }
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        if (fragmentDepth > 0) {
+            handler.skippedEntity(name);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates a {@code gzip} or {@code deflate} encoded payload chunk by chunk, passing the inflated bytes to a consumer as
+ * soon as they are available, so that the inflated payload is never held as a whole.
+ *
+ * The ratio between the inflated and the compressed sizes is bounded, so that a small compressed payload can not
+ * inflate to an unbounded document. The ratio is only checked past {@value #RATIO_CHECK_THRESHOLD} inflated bytes, as
+ * the first bytes of a document may legitimately compress very well.
+ *
+ * An instance inflates a single payload and is not thread safe. It holds native memory until it is ended or released.
+ *
+ * @author GraviteeSource Team
+ */
+public class PayloadInflater {
+
+    static final int RATIO_CHECK_THRESHOLD = 64 * 1024;
+
+    private static final int MAX_GZIP_HEADER_SIZE = 64 * 1024;
+
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final boolean gzip;
+
+    private final int maxRatio;
+
+    private final byte[] output = new byte[8192];
+
+    private final CRC32 crc = new CRC32();
+
+    private Inflater inflater;
+
+    private ByteArrayOutputStream pending;
+
+    private long compressed;
+
+    private long inflated;
+
+    private PayloadInflater(boolean gzip, int maxRatio) {
+        this.gzip = gzip;
+        this.maxRatio = maxRatio;
+        // Gzip members hold raw deflate data, and their header and trailer are read here
+        this.inflater = new Inflater(gzip);
+        this.pending = gzip ? new ByteArrayOutputStream() : null;
+    }
+
+    /**
+     * @param contentEncoding the value of the {@code Content-Encoding} header, or {@code null}.
+     * @param maxRatio maximum ratio between the inflated and the compressed sizes, or 0 for no limit.
+     * @return an inflater for the given encoding, or {@code null} if the payload is not encoded.
+     * @throws SAXException if the encoding is not supported.
+     */
+    public static PayloadInflater of(String contentEncoding, int maxRatio) throws SAXException {
+        String encoding = contentEncoding == null ? "" : contentEncoding.trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "":
+            case "identity":
+                return null;
+            case "gzip":
+            case "x-gzip":
+                return new PayloadInflater(true, maxRatio);
+            case "deflate":
+                return new PayloadInflater(false, maxRatio);
+            default:
+                throw new SAXParseException("Unsupported content encoding: " + contentEncoding, null);
+        }
+    }
+
+    /**
+     * Inflates the given compressed bytes, and passes the inflated bytes to the consumer.
+     */
+    public <E extends SAXException> void inflate(byte[] bytes, int offset, int length, Buffers.BytesConsumer<E> consumer)
+            throws SAXException {
+        compressed += length;
+        if (pending != null) {
+            if (inflater.finished()) {
+                readTrailer(bytes, offset, length);
+                return;
+            }
+            // Gzip header, whose length is only known once read
+            pending.write(bytes, offset, length);
+            byte[] header = pending.toByteArray();
+            int headerLength = gzipHeaderLength(header);
+            if (headerLength < 0) {
+                if (header.length > MAX_GZIP_HEADER_SIZE) {
+                    throw new SAXParseException("Invalid gzip payload: header is too large", null);
+                }
+                return;
+            }
+            pending = null;
+            inflateBody(header, headerLength, header.length - headerLength, consumer);
+        } else {
+            inflateBody(bytes, offset, length, consumer);
+        }
+    }
+
+    private <E extends SAXException> void inflateBody(byte[] bytes, int offset, int length, Buffers.BytesConsumer<E> consumer)
+            throws SAXException {
+        if (inflater.finished()) {
+            readTrailer(bytes, offset, length);
+            return;
+        }
+        inflater.setInput(bytes, offset, length);
+        try {
+            while (!inflater.finished() && !inflater.needsInput()) {
+                int count = inflater.inflate(output);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new SAXParseException("Invalid deflate payload: preset dictionaries are not supported", null);
+                    }
+                    continue;
+                }
+                inflated += count;
+                if (maxRatio > 0 && inflated > RATIO_CHECK_THRESHOLD && inflated > maxRatio * compressed) {
+                    throw new LimitExceededException("Decompressed payload exceeds " + maxRatio + " times its compressed size", null);
+                }
+                if (gzip) {
+                    crc.update(output, 0, count);
+                }
+                consumer.accept(output, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new SAXParseException("Invalid " + (gzip ? "gzip" : "deflate") + " payload: " + e.getMessage(), null, e);
+        }
+
+        if (inflater.finished()) {
+            int remaining = inflater.getRemaining();
+            readTrailer(bytes, offset + length - remaining, remaining);
+        }
+    }
+
+    private void readTrailer(byte[] bytes, int offset, int length) throws SAXException {
+        if (length == 0) {
+            return;
+        }
+        if (!gzip) {
+            throw new SAXParseException("Invalid deflate payload: unexpected data after the end of the compressed data", null);
+        }
+        if (pending == null) {
+            pending = new ByteArrayOutputStream(GZIP_TRAILER_SIZE);
+        }
+        pending.write(bytes, offset, length);
+        if (pending.size() > GZIP_TRAILER_SIZE) {
+            throw new SAXParseException("Invalid gzip payload: concatenated gzip members are not supported", null);
+        }
+    }
+
+    /**
+     * Checks that the whole compressed payload has been received, then releases the inflater.
+     */
+    public void end() throws SAXException {
+        try {
+            if (inflater == null || !inflater.finished()) {
+                throw new SAXParseException("Premature end of compressed payload", null);
+            }
+            if (gzip) {
+                byte[] trailer = pending == null ? new byte[0] : pending.toByteArray();
+                if (trailer.length != GZIP_TRAILER_SIZE) {
+                    throw new SAXParseException("Premature end of gzip payload", null);
+                }
+                if (readInt(trailer, 0) != (int) crc.getValue() || readInt(trailer, 4) != (int) inflated) {
+                    throw new SAXParseException("Invalid gzip payload: checksum or size mismatch", null);
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Releases the native memory of the inflater. The payload can not be inflated anymore.
+     */
+    public void release() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * @return the length of the gzip header at the start of the given bytes, or -1 if it is not complete yet.
+     */
+    private static int gzipHeaderLength(byte[] header) throws SAXException {
+        if (header.length < 10) {
+            return -1;
+        }
+        if ((header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B || header[2] != 8) {
+            throw new SAXParseException("Invalid gzip payload: not in gzip format", null);
+        }
+        int flags = header[3];
+        int length = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (header.length < length + 2) {
+                return -1;
+            }
+            length += 2 + ((header[length] & 0xFF) | (header[length + 1] & 0xFF) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            length = skipZeroTerminated(header, length);
+        }
+        if ((flags & FCOMMENT) != 0 && length >= 0) {
+            length = skipZeroTerminated(header, length);
+        }
+        if ((flags & FHCRC) != 0 && length >= 0) {
+            length += 2;
+        }
+        return length >= 0 && length <= header.length ? length : -1;
+    }
+
+    private static int skipZeroTerminated(byte[] header, int offset) {
+        for (int i = offset; i < header.length; i++) {
+            if (header[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
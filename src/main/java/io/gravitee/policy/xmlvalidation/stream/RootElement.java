@@ -0,0 +1,85 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import com.fasterxml.aalto.stax.InputFactoryImpl;
+import io.gravitee.gateway.api.buffer.Buffer;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the qualified name of the root element of a document, without parsing the rest of it.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RootElement {
+
+    private static final XMLInputFactory FACTORY = new InputFactoryImpl();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private RootElement() {
+    }
+
+    public static QName of(Buffer buffer) throws SAXException {
+        return of(Buffers.inputStream(buffer));
+    }
+
+    /**
+     * Reads the root element from the given stream, which is closed once read.
+     */
+    public static QName of(InputStream input) throws SAXException {
+        XMLStreamReader reader = null;
+        try {
+            reader = FACTORY.createXMLStreamReader(input);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return reader.getName();
+                }
+            }
+            throw new SAXParseException("Document has no root element", null);
+        } catch (XMLStreamException e) {
+            Location location = e.getLocation();
+            throw location == null ? new SAXParseException(e.getMessage(), null, e) :
+                    new SAXParseException(e.getMessage(), null, null, location.getLineNumber(), location.getColumnNumber(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // The input stream is closed below
+                }
+            }
+            try {
+                input.close();
+            } catch (IOException e) {
+                // Nothing left to read
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import io.gravitee.gateway.api.buffer.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Payload held while it is validated. It is kept in memory up to a threshold, then written to a temporary file, so that
+ * the heap used by a payload is bounded whatever its size.
+ *
+ * The temporary files are created in the directory set with the {@value #DIRECTORY_PROPERTY} system property, or in the
+ * default temporary directory. A file is deleted when the buffer is released, or when the buffer is garbage collected
+ * without having been released, for instance when the client aborts the request before the end of the payload.
+ *
+ * File errors are reported as {@link UncheckedIOException}, since they are not caused by the payload. An instance is
+ * not thread safe, but may be read by another thread once written.
+ *
+ * @author GraviteeSource Team
+ */
+public class SpillBuffer {
+
+    public static final String DIRECTORY_PROPERTY = "gravitee.policy.xml-validation.spill.directory";
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillBuffer.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final ReferenceQueue<SpillBuffer> UNRELEASED = new ReferenceQueue<>();
+
+    /**
+     * The files of the buffers not released yet, kept reachable until they are released or reclaimed.
+     */
+    private static final Set<Spill> SPILLS = ConcurrentHashMap.newKeySet();
+
+    private final long threshold;
+
+    private Buffer buffer = Buffer.buffer();
+
+    private Path file;
+
+    private FileChannel channel;
+
+    private Spill spill;
+
+    private long length;
+
+    /**
+     * @param threshold size in bytes above which the payload is written to a file, or 0 to always keep it in memory.
+     */
+    public SpillBuffer(long threshold) {
+        this.threshold = threshold;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    public void append(Buffer content) {
+        length += content.length();
+        try {
+            if (file == null && threshold > 0 && length > threshold) {
+                spill();
+            }
+            if (channel != null) {
+                Buffers.consume(content, this::write);
+            } else {
+                buffer.appendBuffer(content);
+            }
+        } catch (IOException e) {
+            release();
+            throw new UncheckedIOException("Unable to write the payload to a temporary file", e);
+        }
+    }
+
+    /**
+     * Appends a copy of the given bytes, so that the array can be reused once this method returns.
+     */
+    public void append(byte[] bytes, int offset, int length) {
+        append(Buffer.buffer(Arrays.copyOfRange(bytes, offset, offset + length)));
+    }
+
+    private void spill() throws IOException {
+        reclaim();
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        file = directory == null ? Files.createTempFile("xml-validation-", ".xml") :
+                Files.createTempFile(Paths.get(directory), "xml-validation-", ".xml");
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        spill = new Spill(this, file, channel);
+        SPILLS.add(spill);
+        Buffers.consume(buffer, this::write);
+        buffer = null;
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, offset, length);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+    }
+
+    /**
+     * @return a new stream over the payload, which must be closed by the caller.
+     */
+    public InputStream inputStream() {
+        if (file == null) {
+            return Buffers.inputStream(buffer);
+        }
+        try {
+            return Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the payload from a temporary file", e);
+        }
+    }
+
+    /**
+     * Passes the payload to the given consumer, in chunks when it has been written to a file.
+     */
+    public <E extends Exception> void consume(Buffers.BytesConsumer<E> consumer) throws E {
+        if (file == null) {
+            Buffers.consume(buffer, consumer);
+            return;
+        }
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+            while (input.read(chunk) >= 0) {
+                consumer.accept(chunk.array(), 0, chunk.position());
+                chunk.clear();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the payload from a temporary file", e);
+        }
+    }
+
+    /**
+     * Passes the payload to the given consumer as gateway buffers, in chunks when it has been written to a file.
+     */
+    public void writeTo(Consumer<Buffer> consumer) {
+        if (file == null) {
+            consumer.accept(buffer);
+        } else {
+            consume((bytes, offset, length) -> consumer.accept(Buffer.buffer(Arrays.copyOfRange(bytes, offset, offset + length))));
+        }
+    }
+
+    /**
+     * Releases the memory or the file holding the payload. The buffer can not be read anymore.
+     */
+    public void release() {
+        buffer = null;
+        if (file != null) {
+            SPILLS.remove(spill);
+            spill.clear();
+            spill.delete();
+            file = null;
+            channel = null;
+            spill = null;
+        }
+    }
+
+    /**
+     * Deletes the files of the buffers garbage collected without having been released.
+     *
+     * @return the number of deleted files.
+     */
+    static int reclaim() {
+        int count = 0;
+        Reference<? extends SpillBuffer> reference;
+        while ((reference = UNRELEASED.poll()) != null) {
+            Spill spill = (Spill) reference;
+            if (SPILLS.remove(spill)) {
+                logger.debug("Deleting the temporary file {} of an unreleased payload", spill.file);
+                spill.delete();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The file of a buffer, which is deleted once the buffer is unreachable if it has not been released before.
+     */
+    private static final class Spill extends PhantomReference<SpillBuffer> {
+
+        private final Path file;
+
+        private final FileChannel channel;
+
+        private Spill(SpillBuffer buffer, Path file, FileChannel channel) {
+            super(buffer, UNRELEASED);
+            this.file = file;
+            this.channel = channel;
+        }
+
+        private void delete() {
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Unable to delete the temporary file {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import org.xml.sax.SAXParseException;
+
+/**
+ * Thrown when a payload is encoded with a charset the non-blocking parser does not support, although it may be a valid
+ * document.
+ *
+ * @author GraviteeSource Team
+ */
+public class UnsupportedXmlEncodingException extends SAXParseException {
+
+    public UnsupportedXmlEncodingException(String encoding) {
+        super("Unsupported encoding '" + encoding + "': only UTF-8, ISO-8859-1 and US-ASCII are supported", null);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+/**
+ * Structural limits enforced by {@link AsyncXmlParser} while the document is parsed. A limit of {@code 0} means
+ * unlimited.
+ *
+ * @author GraviteeSource Team
+ */
+public class XmlLimits {
+
+    public static final XmlLimits NONE = new XmlLimits(0, 0, 0, 0, false);
+
+    private final int maxDepth;
+
+    private final int maxElements;
+
+    private final int maxAttributes;
+
+    private final int maxTextLength;
+
+    private final boolean rejectDoctype;
+
+    /**
+     * @param maxDepth maximum nesting depth of elements.
+     * @param maxElements maximum number of elements in the document.
+     * @param maxAttributes maximum number of attributes of an element.
+     * @param maxTextLength maximum length, in characters, of a text node.
+     * @param rejectDoctype reject documents with a DOCTYPE declaration.
+     */
+    public XmlLimits(int maxDepth, int maxElements, int maxAttributes, int maxTextLength, boolean rejectDoctype) {
+        this.maxDepth = maxDepth;
+        this.maxElements = maxElements;
+        this.maxAttributes = maxAttributes;
+        this.maxTextLength = maxTextLength;
+        this.rejectDoctype = rejectDoctype;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxElements() {
+        return maxElements;
+    }
+
+    public int getMaxAttributes() {
+        return maxAttributes;
+    }
+
+    public int getMaxTextLength() {
+        return maxTextLength;
+    }
+
+    public boolean isRejectDoctype() {
+        return rejectDoctype;
+    }
+
+    /**
+     * @return {@code true} if at least one limit is set.
+     */
+    public boolean isEnabled() {
+        return maxDepth > 0 || maxElements > 0 || maxAttributes > 0 || maxTextLength > 0 || rejectDoctype;
+    }
+}
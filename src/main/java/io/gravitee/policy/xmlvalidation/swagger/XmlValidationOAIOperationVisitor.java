@@ -15,45 +15,113 @@
  */
 package io.gravitee.policy.xmlvalidation.swagger;
 
-import com.ethlo.jsons2xsd.Config;
-import com.ethlo.jsons2xsd.JsonSimpleType;
-import com.ethlo.jsons2xsd.Jsons2Xsd;
-import com.ethlo.jsons2xsd.XsdSimpleType;
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import io.gravitee.policy.api.swagger.Policy;
 import io.gravitee.policy.api.swagger.v3.OAIOperationVisitor;
-import io.gravitee.policy.xmlvalidation.configuration.XmlValidationPolicyConfiguration;
 import io.swagger.v3.core.util.Json;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.media.Content;
+import io.swagger.v3.oas.models.media.MediaType;
 import io.swagger.v3.oas.models.media.Schema;
 import io.swagger.v3.oas.models.parameters.RequestBody;
-import org.apache.commons.lang3.StringUtils;
-import org.w3c.dom.DOMConfiguration;
-import org.w3c.dom.Document;
-import org.w3c.dom.bootstrap.DOMImplementationRegistry;
-import org.w3c.dom.ls.DOMImplementationLS;
-import org.w3c.dom.ls.LSSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
+ * Generates the XSD schema of the XML request body of the operations.
+ *
+ * On the first operation of an API definition, the distinct XML request schemas of all its operations are converted in
+ * parallel, and kept for the following operations of that definition only.
+ *
  * @author Florent CHAMFROY (florent.chamfroy at graviteesource.com)
  * @author GraviteeSource Team
  */
 public class XmlValidationOAIOperationVisitor implements OAIOperationVisitor {
 
-    public static final String XSD_TARGET_NAMESPACE = "urn:io:gravitee:policy:xml-validation";
+    private static final Logger logger = LoggerFactory.getLogger(XmlValidationOAIOperationVisitor.class);
+
+    private static final String XML_MEDIA_TYPE = "application/xml";
+
+    public static final String XSD_TARGET_NAMESPACE = XsdConverter.XSD_TARGET_NAMESPACE;
+
+    private final XsdConverter converter;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * The schemas converted for the API definition being visited.
+     */
+    private volatile Conversions conversions;
+
+    public XmlValidationOAIOperationVisitor() {
+        this(XsdConverter.getInstance(), ForkJoinPool.commonPool());
+    }
+
+    XmlValidationOAIOperationVisitor(XsdConverter converter, ForkJoinPool pool) {
+        this.converter = converter;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the XSD schemas of the API definition by compact JSON schema, converted on its first operation.
+     */
+    private Map<String, String> conversions(OpenAPI openAPI) {
+        Conversions current = conversions;
+        if (current == null || current.openAPI.get() != openAPI) {
+            synchronized (this) {
+                current = conversions;
+                if (current == null || current.openAPI.get() != openAPI) {
+                    current = new Conversions(openAPI, preconvert(openAPI));
+                    conversions = current;
+                }
+            }
+        }
+        return current.xsdSchemas;
+    }
+
+    /**
+     * Converts the distinct XML request schemas of all the operations of the API definition in parallel, on the
+     * fork-join pool. Schemas which fail to convert are skipped, and reported again by their operations.
+     *
+     * @return the XSD schemas by compact JSON schema.
+     */
+    private Map<String, String> preconvert(OpenAPI openAPI) {
+        Set<String> jsonSchemas = new LinkedHashSet<>();
+        if (openAPI.getPaths() != null) {
+            for (PathItem path : openAPI.getPaths().values()) {
+                for (Operation operation : path.readOperations()) {
+                    Schema schema = xmlRequestSchema(operation);
+                    if (schema != null) {
+                        try {
+                            jsonSchemas.add(Json.mapper().writeValueAsString(schema));
+                        } catch (IOException e) {
+                            logger.warn("Unable to serialize the XML request schema of operation {}", operation.getOperationId(), e);
+                        }
+                    }
+                }
+            }
+        }
 
-    private final ObjectMapper mapper = new ObjectMapper();
-    {
-        mapper.configure(JsonGenerator.Feature.WRITE_NUMBERS_AS_STRINGS, true);
-        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        Map<String, String> xsdSchemas = new ConcurrentHashMap<>();
+        pool.submit(() -> jsonSchemas.parallelStream().forEach(jsonSchema -> {
+            try {
+                xsdSchemas.put(jsonSchema, converter.convert(jsonSchema));
+            } catch (IOException | IllegalAccessException | InstantiationException | ClassNotFoundException
+                    | RuntimeException e) {
+                logger.warn("Unable to convert an XML request schema to XSD", e);
+            }
+        })).join();
+        return xsdSchemas;
     }
 
     @Override
@@ -61,49 +129,57 @@ public class XmlValidationOAIOperationVisitor implements OAIOperationVisitor {
      * openAPI has been parsed with the "resolveFully" option. As a consequence, all $ref have been replaced by proper definition.
      */
     public Optional<Policy> visit(io.swagger.v3.oas.models.OpenAPI openAPI, io.swagger.v3.oas.models.Operation operation) {
-        String jsonSchema = null;
+        final Schema schema = xmlRequestSchema(operation);
+        if (schema == null) {
+            return Optional.empty();
+        }
+
+        try {
+            // Compact, so that equal schemas share their conversion whatever their formatting
+            String jsonSchema = Json.mapper().writeValueAsString(schema);
+            String xsdSchema = conversions(openAPI).get(jsonSchema);
+            return Optional.of(xsdSchema != null ? converter.xsdPolicy(xsdSchema) : converter.policy(jsonSchema));
+        } catch (IOException | IllegalAccessException | InstantiationException | ClassNotFoundException e) {
+            logger.warn("Unable to convert the XML request schema of operation {} to XSD", operation.getOperationId(), e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the schema of the {@code application/xml} request body of the operation, else of its first
+     * {@code text/xml} or {@code application/*+xml} request body, or {@code null} if it has none.
+     */
+    private static Schema xmlRequestSchema(Operation operation) {
         final RequestBody requestBody = operation.getRequestBody();
-        if (requestBody != null && requestBody.getContent() != null && requestBody.getContent().get("application/xml") != null) {
-            final Schema schema = requestBody.getContent().get("application/xml").getSchema();
-            jsonSchema = Json.pretty(schema);
+        final Content content = requestBody == null ? null : requestBody.getContent();
+        if (content == null) {
+            return null;
         }
-        if (!StringUtils.isEmpty(jsonSchema)) {
-            XmlValidationPolicyConfiguration configuration = new XmlValidationPolicyConfiguration();
-            try {
-                String xmlSchema = convert(jsonSchema);
-
-                Policy policy = new Policy();
-                policy.setName("xml-validation");
-                configuration.setXsdSchema(xmlSchema);
-                policy.setConfiguration(mapper.writeValueAsString(configuration));
-                return Optional.of(policy);
-            } catch (IOException | IllegalAccessException | InstantiationException | ClassNotFoundException e) {
-                e.printStackTrace();
+
+        MediaType mediaType = content.get(XML_MEDIA_TYPE);
+        if (mediaType == null) {
+            for (Map.Entry<String, MediaType> entry : content.entrySet()) {
+                if (XsdConverter.isXml(entry.getKey())) {
+                    mediaType = entry.getValue();
+                    break;
+                }
             }
         }
-        return Optional.empty();
+        return mediaType == null ? null : mediaType.getSchema();
     }
 
-    private String convert(String jsonSchema) throws IOException, InstantiationException, IllegalAccessException, ClassNotFoundException {
-        try(Reader jsonReader = new StringReader(jsonSchema)) {
-            final Config cfg = new Config.Builder()
-                    .name("rootType")
-                    .targetNamespace(XSD_TARGET_NAMESPACE)
-                    .createRootElement(true)
-                    .nsAlias("ns")
-                    .rootElement("root")
-                    .validateXsdSchema(false)
-                    .customTypeMapping(JsonSimpleType.INTEGER, "int64", XsdSimpleType.LONG)
-                    .build();
-            final Document xmlSchemaDoc = Jsons2Xsd.convert(jsonReader, cfg);
-
-            DOMImplementationLS impl = (DOMImplementationLS) DOMImplementationRegistry.newInstance().getDOMImplementation("LS");
-
-            LSSerializer writer = impl.createLSSerializer();
-            DOMConfiguration config = writer.getDomConfig();
-            config.setParameter("format-pretty-print", Boolean.TRUE);
-
-            return writer.writeToString(xmlSchemaDoc);
+    private static final class Conversions {
+
+        /**
+         * Weakly held, so that the definition is not kept once imported.
+         */
+        private final WeakReference<OpenAPI> openAPI;
+
+        private final Map<String, String> xsdSchemas;
+
+        private Conversions(OpenAPI openAPI, Map<String, String> xsdSchemas) {
+            this.openAPI = new WeakReference<>(openAPI);
+            this.xsdSchemas = xsdSchemas;
         }
     }
 }
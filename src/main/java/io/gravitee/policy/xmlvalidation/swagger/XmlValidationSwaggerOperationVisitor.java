@@ -15,20 +15,159 @@
  */
 package io.gravitee.policy.xmlvalidation.swagger;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.gravitee.policy.api.swagger.Policy;
 import io.gravitee.policy.api.swagger.v2.SwaggerOperationVisitor;
+import io.swagger.models.Model;
 import io.swagger.models.Operation;
 import io.swagger.models.Swagger;
+import io.swagger.models.parameters.BodyParameter;
+import io.swagger.models.parameters.Parameter;
+import io.swagger.util.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Generates the XSD schema of the body parameter of the operations consuming XML, with the same cached conversion as
+ * the OpenAPI visitor.
+ *
+ * The references to the definitions are inlined before the conversion. Operations sharing a definition then have the
+ * same JSON schema, which is converted once. Each definition is inlined once per API definition, and copied where it is
+ * referenced.
+ *
  * @author Florent CHAMFROY (florent.chamfroy at graviteesource.com)
  * @author GraviteeSource Team
  */
 public class XmlValidationSwaggerOperationVisitor implements SwaggerOperationVisitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(XmlValidationSwaggerOperationVisitor.class);
+
+    private static final String DEFINITIONS = "#/definitions/";
+
+    private final XsdConverter converter = XsdConverter.getInstance();
+
+    /**
+     * The definitions inlined for the API definition being visited.
+     */
+    private volatile Definitions definitions;
+
     @Override
     public Optional<Policy> visit(Swagger swagger, Operation o) {
+        Model schema = xmlBodySchema(swagger, o);
+        if (schema == null) {
+            return Optional.empty();
+        }
+
+        try {
+            JsonNode jsonSchema = definitions(swagger).inline(Json.mapper().valueToTree(schema), new HashSet<>());
+            return Optional.of(converter.policy(Json.mapper().writeValueAsString(jsonSchema)));
+        } catch (IOException | IllegalAccessException | InstantiationException | ClassNotFoundException
+                | IllegalArgumentException e) {
+            logger.warn("Unable to convert the body schema of operation {} to XSD", o.getOperationId(), e);
+        }
         return Optional.empty();
     }
+
+    private Definitions definitions(Swagger swagger) {
+        Definitions current = definitions;
+        if (current == null || current.swagger.get() != swagger) {
+            current = new Definitions(swagger);
+            definitions = current;
+        }
+        return current;
+    }
+
+    /**
+     * @return the schema of the body parameter of the operation, or {@code null} if it has none or does not consume
+     * XML. The operation consumes the media types of the API definition unless it declares its own.
+     */
+    private static Model xmlBodySchema(Swagger swagger, Operation operation) {
+        List<String> consumes = operation.getConsumes() != null ? operation.getConsumes() : swagger.getConsumes();
+        if (consumes == null || consumes.stream().noneMatch(XsdConverter::isXml)
+                || operation.getParameters() == null) {
+            return null;
+        }
+
+        for (Parameter parameter : operation.getParameters()) {
+            if (parameter instanceof BodyParameter) {
+                return ((BodyParameter) parameter).getSchema();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The definitions of an API definition, with their references inlined.
+     */
+    private static final class Definitions {
+
+        /**
+         * Weakly held, so that the definition is not kept once imported.
+         */
+        private final WeakReference<Swagger> swagger;
+
+        private final Map<String, Model> models;
+
+        private final Map<String, JsonNode> inlined = new ConcurrentHashMap<>();
+
+        private Definitions(Swagger swagger) {
+            this.swagger = new WeakReference<>(swagger);
+            this.models = swagger.getDefinitions();
+        }
+
+        /**
+         * Replaces the references to the definitions by copies of the definitions themselves, recursively.
+         *
+         * @param resolving the definitions being inlined, to reject recursive definitions which XSD sequences can not hold.
+         */
+        private JsonNode inline(JsonNode node, Set<String> resolving) {
+            if (node.isObject()) {
+                JsonNode ref = node.get("$ref");
+                if (ref != null && ref.isTextual()) {
+                    String name = ref.asText().startsWith(DEFINITIONS) ? ref.asText().substring(DEFINITIONS.length()) : ref.asText();
+                    if (resolving.contains(name)) {
+                        throw new IllegalArgumentException("Recursive definition " + ref.asText());
+                    }
+                    JsonNode definition = inlined.get(name);
+                    if (definition == null) {
+                        Model model = models == null ? null : models.get(name);
+                        if (model == null) {
+                            throw new IllegalArgumentException("Unknown definition " + ref.asText());
+                        }
+                        resolving.add(name);
+                        definition = inline(Json.mapper().valueToTree(model), resolving);
+                        resolving.remove(name);
+                        inlined.put(name, definition);
+                    }
+                    // Copied, so that the shared definition is never modified through one of its references
+                    return definition.deepCopy();
+                }
+
+                ObjectNode object = (ObjectNode) node;
+                List<String> fields = new ArrayList<>();
+                object.fieldNames().forEachRemaining(fields::add);
+                for (String field : fields) {
+                    object.set(field, inline(object.get(field), resolving));
+                }
+            } else if (node.isArray()) {
+                ArrayNode array = (ArrayNode) node;
+                for (int i = 0; i < array.size(); i++) {
+                    array.set(i, inline(array.get(i), resolving));
+                }
+            }
+            return node;
+        }
+    }
 }
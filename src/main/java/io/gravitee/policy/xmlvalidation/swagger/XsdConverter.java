@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.swagger;
+
+import com.ethlo.jsons2xsd.Config;
+import com.ethlo.jsons2xsd.JsonSimpleType;
+import com.ethlo.jsons2xsd.Jsons2Xsd;
+import com.ethlo.jsons2xsd.XsdSimpleType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.gravitee.policy.api.swagger.Policy;
+import io.gravitee.policy.xmlvalidation.schema.SchemaCache;
+import org.w3c.dom.Document;
+import org.w3c.dom.bootstrap.DOMImplementationRegistry;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSSerializer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Converts the JSON schemas of an API definition to XSD schemas, once per distinct schema, for the OpenAPI and Swagger
+ * visitors.
+ *
+ * Large API definitions share a handful of request schemas between their operations, so the conversions are cached by
+ * the SHA-256 digest of the compact JSON schema, in a JVM wide LRU cache. The properties are kept in their declaration
+ * order, which is also the order of the XSD sequences.
+ *
+ * The XSD schemas are indented, unless {@value #COMPACT_PROPERTY} is set, which also shrinks the policy configurations
+ * holding them.
+ *
+ * @author GraviteeSource Team
+ */
+public class XsdConverter {
+
+    public static final String XSD_TARGET_NAMESPACE = "urn:io:gravitee:policy:xml-validation";
+
+    public static final String CACHE_MAX_SIZE_PROPERTY = "gravitee.policy.xml-validation.import.cache.max-size";
+
+    public static final String COMPACT_PROPERTY = "gravitee.policy.xml-validation.import.compact";
+
+    private static final int DEFAULT_CACHE_MAX_SIZE = 1000;
+
+    private static final Config CONFIG = new Config.Builder()
+            .name("rootType")
+            .targetNamespace(XSD_TARGET_NAMESPACE)
+            .createRootElement(true)
+            .nsAlias("ns")
+            .rootElement("root")
+            .validateXsdSchema(false)
+            .customTypeMapping(JsonSimpleType.INTEGER, "int64", XsdSimpleType.LONG)
+            .build();
+
+    private static final XsdConverter INSTANCE = new XsdConverter(
+            Integer.getInteger(CACHE_MAX_SIZE_PROPERTY, DEFAULT_CACHE_MAX_SIZE), Boolean.getBoolean(COMPACT_PROPERTY));
+
+    private final boolean compact;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, String> schemas;
+
+    private volatile DOMImplementationLS domImplementation;
+
+    XsdConverter(final int maxSize, boolean compact) {
+        this.compact = compact;
+        mapper.configure(SerializationFeature.INDENT_OUTPUT, !compact);
+        this.schemas = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static XsdConverter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param jsonSchema the JSON schema, serialized without indentation.
+     * @return the XSD schema, converted or taken from the cache.
+     */
+    public String convert(String jsonSchema) throws IOException, ClassNotFoundException, InstantiationException,
+            IllegalAccessException {
+        String digest = SchemaCache.digest(jsonSchema);
+        synchronized (schemas) {
+            String xsdSchema = schemas.get(digest);
+            if (xsdSchema != null) {
+                return xsdSchema;
+            }
+        }
+
+        String xsdSchema;
+        try (Reader jsonReader = new StringReader(jsonSchema)) {
+            xsdSchema = serialize(Jsons2Xsd.convert(jsonReader, CONFIG));
+        }
+        synchronized (schemas) {
+            schemas.put(digest, xsdSchema);
+        }
+        return xsdSchema;
+    }
+
+    /**
+     * @return the XML validation policy validating against the XSD schema converted from the JSON schema. Its
+     * configuration only holds the XSD schema, so that the other options keep the defaults of the deployed policy.
+     */
+    public Policy policy(String jsonSchema) throws IOException, ClassNotFoundException, InstantiationException,
+            IllegalAccessException {
+        return xsdPolicy(convert(jsonSchema));
+    }
+
+    /**
+     * Same as {@link #policy(String)}, with an already converted XSD schema.
+     */
+    public Policy xsdPolicy(String xsdSchema) throws IOException {
+        ObjectNode configuration = mapper.createObjectNode();
+        configuration.put("xsdSchema", xsdSchema);
+
+        Policy policy = new Policy();
+        policy.setName("xml-validation");
+        policy.setConfiguration(mapper.writeValueAsString(configuration));
+        return policy;
+    }
+
+    /**
+     * @return whether the media type is {@code application/xml}, {@code text/xml} or {@code application/*+xml},
+     * whatever its parameters.
+     */
+    static boolean isXml(String mediaType) {
+        if (mediaType == null) {
+            return false;
+        }
+        int parameters = mediaType.indexOf(';');
+        String type = (parameters < 0 ? mediaType : mediaType.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+        return type.equals("application/xml") || type.equals("text/xml") ||
+                (type.startsWith("application/") && type.endsWith("+xml"));
+    }
+
+    public int size() {
+        synchronized (schemas) {
+            return schemas.size();
+        }
+    }
+
+    private String serialize(Document xsdSchema) throws ClassNotFoundException, InstantiationException,
+            IllegalAccessException {
+        // Serializers are cheap and not thread safe, the registry lookup of their implementation is not
+        LSSerializer writer = domImplementation().createLSSerializer();
+        writer.getDomConfig().setParameter("format-pretty-print", !compact);
+        return writer.writeToString(xsdSchema);
+    }
+
+    private DOMImplementationLS domImplementation() throws ClassNotFoundException, InstantiationException,
+            IllegalAccessException {
+        DOMImplementationLS implementation = domImplementation;
+        if (implementation == null) {
+            implementation = (DOMImplementationLS) DOMImplementationRegistry.newInstance().getDOMImplementation("LS");
+            domImplementation = implementation;
+        }
+        return implementation;
+    }
+}
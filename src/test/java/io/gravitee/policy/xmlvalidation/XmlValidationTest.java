@@ -15,6 +15,7 @@
  */
 package io.gravitee.policy.xmlvalidation;
 
+import io.gravitee.common.http.HttpHeaders;
 import io.gravitee.common.http.HttpStatusCode;
 import io.gravitee.common.util.ServiceLoaderHelper;
 import io.gravitee.el.TemplateEngine;
@@ -26,17 +27,50 @@ import io.gravitee.gateway.api.buffer.BufferFactory;
 import io.gravitee.gateway.api.stream.ReadWriteStream;
 import io.gravitee.policy.api.PolicyChain;
 import io.gravitee.policy.api.PolicyResult;
+import io.gravitee.policy.xmlvalidation.configuration.ExecutionMode;
+import io.gravitee.policy.xmlvalidation.configuration.SchemaCatalogEntry;
+import io.gravitee.policy.xmlvalidation.configuration.SchemaMapping;
+import io.gravitee.policy.xmlvalidation.configuration.ValidationEngineType;
+import io.gravitee.policy.xmlvalidation.configuration.ValidationMode;
 import io.gravitee.policy.xmlvalidation.configuration.XmlValidationPolicyConfiguration;
+import io.gravitee.policy.xmlvalidation.metrics.FailureReason;
+import io.gravitee.policy.xmlvalidation.metrics.ValidationRecorder;
+import io.gravitee.policy.xmlvalidation.metrics.XmlValidationMetrics;
+import io.gravitee.policy.xmlvalidation.schema.SchemaCache;
+import io.gravitee.policy.xmlvalidation.schema.SchemaFileWatcher;
+import io.gravitee.policy.xmlvalidation.schema.ValidatorPool;
+import io.gravitee.policy.xmlvalidation.schema.VerdictCache;
+import io.gravitee.policy.xmlvalidation.stream.SpillBuffer;
 import io.gravitee.reporter.api.http.Metrics;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -113,6 +147,12 @@ public class XmlValidationTest {
 
     private XmlValidationPolicy policy;
 
+    @Rule
+    public TemporaryFolder spillDirectory = new TemporaryFolder();
+
+    @Rule
+    public TemporaryFolder schemaDirectory = new TemporaryFolder();
+
     @Before
     public void beforeAll() {
         metrics = Metrics.on(System.currentTimeMillis()).build();
@@ -160,13 +200,868 @@ public class XmlValidationTest {
     public void shouldMalformedXsdSchemaBeRejected() {
         when(configuration.getXsdSchema()).thenReturn("\"msg\":\"error\"}");
 
+        assertThatThrownBy(() -> new XmlValidationPolicy(configuration))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Invalid XSD schema");
+    }
+
+    @Test
+    public void shouldRequireXsdSchemaInSchemaMode() {
+        when(configuration.getXsdSchema()).thenReturn(null);
+
+        assertThatThrownBy(() -> new XmlValidationPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldWarmUpWithSampleDocument() throws Exception {
+        // A schema no other test compiles, so that it has neither been warmed up nor used yet
+        String warmedUpSchema = xsdSchema + "<!-- warm-up -->";
+        when(configuration.getXsdSchema()).thenReturn(warmedUpSchema);
+        when(configuration.getWarmupSample()).thenReturn(validXmlContent.toString());
+
+        new XmlValidationPolicy(configuration);
+
+        ValidatorPool validators = SchemaCache.getInstance().get(warmedUpSchema).getValidators();
+        await(() -> validators.getReused() == 99);
+        assertThat(validators.getCreated()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecordValidationMeasurements() {
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(validXmlContent);
+        readWriteStream.end();
+
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_BYTES, (long) validXmlContent.length());
+        verify(mockExecutionContext).setAttribute(eq(ValidationRecorder.ATTR_VALIDATION_TIME), ArgumentMatchers.anyLong());
+        verify(mockExecutionContext).setAttribute(eq(ValidationRecorder.ATTR_SCHEMA_CACHE), ArgumentMatchers.anyString());
+        verify(mockExecutionContext, never()).setAttribute(eq(ValidationRecorder.ATTR_FAILURE), any());
+    }
+
+    @Test
+    public void shouldRecordSchemaViolation() {
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(invalidXmContent);
+        readWriteStream.end();
+
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldValidateWithWoodstoxEngine() {
+        when(configuration.getEngine()).thenReturn(ValidationEngineType.WOODSTOX);
+        policy = new XmlValidationPolicy(configuration);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(validXmlContent);
+        readWriteStream.end();
+        verify(mockPolicychain, never()).streamFailWith(any());
+
+        readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(invalidXmContent);
+        readWriteStream.end();
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldRecordMalformedPayloadInStreamingMode() {
+        when(configuration.isStreaming()).thenReturn(true);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer("<root><companies></root>"));
+        readWriteStream.end();
+
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.MALFORMED.name());
+    }
+
+    @Test
+    public void shouldValidatePayloadWithDeclaredEncoding() {
+        Buffer latin1XmlContent = factory.buffer(validXmlContent.toString()
+                .replace("UTF-8", "ISO-8859-1")
+                .replace("<name>Foo Inc</name>", "<name>Caf\u00e9 Inc</name>")
+                .getBytes(StandardCharsets.ISO_8859_1));
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        StringBuilder forwarded = new StringBuilder();
+        readWriteStream.bodyHandler(buffer -> forwarded.append(((Buffer) buffer).toString(StandardCharsets.ISO_8859_1)));
+        readWriteStream.write(latin1XmlContent);
+        readWriteStream.end();
+
+        verify(mockPolicychain, times(0)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+        assertThat(forwarded.toString()).contains("Caf\u00e9 Inc");
+    }
+
+    @Test
+    public void shouldAcceptValidPayloadInStreamingMode() {
+        when(configuration.isStreaming()).thenReturn(true);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        StringBuilder forwarded = new StringBuilder();
+        readWriteStream.bodyHandler(buffer -> forwarded.append(buffer.toString()));
+        for (Buffer chunk : split(validXmlContent, 7)) {
+            readWriteStream.write(chunk);
+        }
+        readWriteStream.end();
+
+        verify(mockPolicychain, times(0)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+        assertThat(forwarded.toString()).isEqualTo(validXmlContent.toString());
+    }
+
+    @Test
+    public void shouldSpillLargePayloadToDisk() throws Exception {
+        when(configuration.getSpillThreshold()).thenReturn(64L);
+        System.setProperty(SpillBuffer.DIRECTORY_PROPERTY, spillDirectory.getRoot().getPath());
+        try {
+            ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+            StringBuilder forwarded = new StringBuilder();
+            readWriteStream.bodyHandler(buffer -> forwarded.append(buffer.toString()));
+            for (Buffer chunk : split(validXmlContent, 7)) {
+                readWriteStream.write(chunk);
+            }
+            assertThat(spillDirectory.getRoot().list()).hasSize(1);
+            readWriteStream.end();
+
+            verify(mockPolicychain, never()).streamFailWith(any());
+            assertThat(forwarded.toString()).isEqualTo(validXmlContent.toString());
+            assertThat(spillDirectory.getRoot().list()).isEmpty();
+        } finally {
+            System.clearProperty(SpillBuffer.DIRECTORY_PROPERTY);
+        }
+    }
+
+    @Test
+    public void shouldRejectInvalidSpilledPayload() {
+        when(configuration.getSpillThreshold()).thenReturn(64L);
+        System.setProperty(SpillBuffer.DIRECTORY_PROPERTY, spillDirectory.getRoot().getPath());
+        try {
+            ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+            readWriteStream.write(invalidXmContent);
+            readWriteStream.end();
+
+            policyAssertions();
+            assertThat(spillDirectory.getRoot().list()).isEmpty();
+        } finally {
+            System.clearProperty(SpillBuffer.DIRECTORY_PROPERTY);
+        }
+    }
+
+    @Test
+    public void shouldReuseCachedVerdictOfRepeatedPayload() {
+        when(configuration.isVerdictCache()).thenReturn(true);
+        VerdictCache.getInstance().clear();
+
+        for (int i = 0; i < 2; i++) {
+            ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+            StringBuilder forwarded = new StringBuilder();
+            readWriteStream.bodyHandler(buffer -> forwarded.append(buffer.toString()));
+            readWriteStream.write(validXmlContent);
+            readWriteStream.end();
+            assertThat(forwarded.toString()).isEqualTo(validXmlContent.toString());
+        }
+
+        verify(mockPolicychain, never()).streamFailWith(any());
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_VERDICT_CACHE, "MISS");
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_VERDICT_CACHE, "HIT");
+    }
+
+    @Test
+    public void shouldRejectRepeatedInvalidPayloadFromCachedVerdict() {
+        when(configuration.isVerdictCache()).thenReturn(true);
+        VerdictCache.getInstance().clear();
+
+        for (int i = 0; i < 2; i++) {
+            ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+            readWriteStream.write(invalidXmContent);
+            readWriteStream.end();
+        }
+
+        verify(mockPolicychain, times(2)).streamFailWith(any());
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_VERDICT_CACHE, "HIT");
+        verify(mockExecutionContext, times(2)).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldValidateGzipPayloadAndForwardItCompressed() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(mockRequest.headers()).thenReturn(headers);
+        when(configuration.getMaxInflationRatio()).thenReturn(100);
+        byte[] compressed = gzip(validXmlContent.getBytes());
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        ByteArrayOutputStream forwarded = new ByteArrayOutputStream();
+        readWriteStream.bodyHandler(buffer -> forwarded.write(((Buffer) buffer).getBytes(), 0, ((Buffer) buffer).length()));
+        for (Buffer chunk : split(factory.buffer(compressed), 5)) {
+            readWriteStream.write(chunk);
+        }
+        readWriteStream.end();
+
+        verify(mockPolicychain, never()).streamFailWith(any());
+        assertThat(forwarded.toByteArray()).isEqualTo(compressed);
+    }
+
+    @Test
+    public void shouldRejectInvalidGzipPayload() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(mockRequest.headers()).thenReturn(headers);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer(gzip(invalidXmContent.getBytes())));
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    private byte[] encode(Buffer content, String encoding) {
+        return content.toString().replace("encoding=\"UTF-8\"", "encoding=\"" + encoding + "\"").getBytes(Charset.forName(encoding));
+    }
+
+    @Test
+    public void shouldValidateGzipPayloadWithUnsupportedEncodingAsWhole() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(mockRequest.headers()).thenReturn(headers);
+        byte[] compressed = gzip(encode(validXmlContent, "windows-1252"));
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        ByteArrayOutputStream forwarded = new ByteArrayOutputStream();
+        readWriteStream.bodyHandler(buffer -> forwarded.write(((Buffer) buffer).getBytes(), 0, ((Buffer) buffer).length()));
+        for (Buffer chunk : split(factory.buffer(compressed), 5)) {
+            readWriteStream.write(chunk);
+        }
+        readWriteStream.end();
+
+        verify(mockPolicychain, never()).streamFailWith(any());
+        assertThat(forwarded.toByteArray()).isEqualTo(compressed);
+
+        readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer(gzip(encode(invalidXmContent, "windows-1252"))));
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldValidateUtf16GzipPayloadOnWorker() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(mockRequest.headers()).thenReturn(headers);
+        when(configuration.getExecutionMode()).thenReturn(ExecutionMode.WORKER);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        CountDownLatch ended = new CountDownLatch(1);
+        readWriteStream.endHandler(result -> ended.countDown());
+        readWriteStream.write(factory.buffer(gzip(encode(validXmlContent, "UTF-16"))));
+        readWriteStream.end();
+
+        assertThat(ended.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(mockPolicychain, never()).streamFailWith(any());
+    }
+
+    @Test
+    public void shouldRejectGzipPayloadWithUnsupportedEncodingInStreamingMode() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(mockRequest.headers()).thenReturn(headers);
+        when(configuration.isStreaming()).thenReturn(true);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer(gzip(encode(validXmlContent, "windows-1252"))));
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.MALFORMED.name());
+    }
+
+    @Test
+    public void shouldValidateGzipPayloadOnWorker() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(mockRequest.headers()).thenReturn(headers);
+        when(configuration.getExecutionMode()).thenReturn(ExecutionMode.WORKER);
+        byte[] compressed = gzip(validXmlContent.getBytes());
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        ByteArrayOutputStream forwarded = new ByteArrayOutputStream();
+        readWriteStream.bodyHandler(buffer -> forwarded.write(((Buffer) buffer).getBytes(), 0, ((Buffer) buffer).length()));
+        CountDownLatch ended = new CountDownLatch(1);
+        readWriteStream.endHandler(result -> ended.countDown());
+        readWriteStream.write(factory.buffer(compressed));
+        readWriteStream.end();
+
+        assertThat(ended.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(mockPolicychain, never()).streamFailWith(any());
+        assertThat(forwarded.toByteArray()).isEqualTo(compressed);
+
+        readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer(gzip(invalidXmContent.getBytes())));
+        readWriteStream.end();
+
+        verify(mockPolicychain, timeout(5000)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+        policyAssertions();
+    }
+
+    @Test
+    public void shouldRejectUndeclaredEntityInGzipPayload() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(mockRequest.headers()).thenReturn(headers);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer(gzip("<root>&x;</root>".getBytes(StandardCharsets.UTF_8))));
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.MALFORMED.name());
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    @Test
+    public void shouldRejectInvalidPayloadBeforeEndInStreamingMode() {
+        when(configuration.isStreaming()).thenReturn(true);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        for (Buffer chunk : split(invalidXmContent, 7)) {
+            readWriteStream.write(chunk);
+        }
+
+        policyAssertions();
+
+        readWriteStream.end();
+        verify(mockPolicychain, times(1)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+    }
+
+    @Test
+    public void shouldRejectTruncatedPayloadInStreamingMode() {
+        when(configuration.isStreaming()).thenReturn(true);
+
+        String content = validXmlContent.toString();
         ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer(content.substring(0, content.length() / 2)));
+        readWriteStream.end();
+
+        policyAssertions();
+    }
+
+    @Test
+    public void shouldAcceptValidPayloadOnWorker() throws Exception {
+        when(configuration.getExecutionMode()).thenReturn(ExecutionMode.WORKER);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        CountDownLatch ended = new CountDownLatch(1);
+        readWriteStream.endHandler(result -> ended.countDown());
         readWriteStream.write(validXmlContent);
         readWriteStream.end();
 
+        assertThat(ended.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(mockPolicychain, times(0)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+    }
+
+    @Test
+    public void shouldRejectInvalidPayloadOnWorker() {
+        when(configuration.getExecutionMode()).thenReturn(ExecutionMode.WORKER);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(invalidXmContent);
+        readWriteStream.end();
+
+        verify(mockPolicychain, timeout(5000)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
         policyAssertions();
     }
 
+    @Test
+    public void shouldAcceptWellFormedPayloadWithoutSchema() {
+        when(configuration.getValidationMode()).thenReturn(ValidationMode.WELL_FORMED);
+        policy = new XmlValidationPolicy(configuration);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        StringBuilder forwarded = new StringBuilder();
+        readWriteStream.bodyHandler(buffer -> forwarded.append(buffer.toString()));
+        for (Buffer chunk : split(invalidXmContent, 5)) {
+            readWriteStream.write(chunk);
+        }
+        assertThat(forwarded).isEmpty();
+        readWriteStream.end();
+
+        verify(mockPolicychain, times(0)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+        assertThat(forwarded.toString()).isEqualTo(invalidXmContent.toString());
+    }
+
+    @Test
+    public void shouldRejectMalformedPayloadInWellFormedMode() {
+        when(configuration.getValidationMode()).thenReturn(ValidationMode.WELL_FORMED);
+        policy = new XmlValidationPolicy(configuration);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer("<root><a></b></root>"));
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.MALFORMED.name());
+    }
+
+    @Test
+    public void shouldRejectOversizedPayloadBeforeEnd() {
+        when(configuration.getMaxBodySize()).thenReturn(100L);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        for (Buffer chunk : split(validXmlContent, 5)) {
+            readWriteStream.write(chunk);
+        }
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.LIMIT_EXCEEDED.name());
+
+        readWriteStream.end();
+        verify(mockPolicychain, times(1)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+    }
+
+    @Test
+    public void shouldRejectTooDeepPayloadBeforeEnd() {
+        when(configuration.getMaxDepth()).thenReturn(2);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer("<root><companies><company>"));
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.LIMIT_EXCEEDED.name());
+    }
+
+    @Test
+    public void shouldRejectDoctypeWhenConfigured() {
+        when(configuration.isRejectDoctype()).thenReturn(true);
+
+        String content = validXmlContent.toString().replace("<root>",
+                "<!DOCTYPE root SYSTEM \"root.dtd\">\n<root>");
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer(content));
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.LIMIT_EXCEEDED.name());
+    }
+
+    @Test
+    public void shouldNotFetchExternalDtd() {
+        String content = validXmlContent.toString().replace("<root>",
+                "<!DOCTYPE root SYSTEM \"http://localhost:1/root.dtd\">\n<root>");
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer(content));
+        readWriteStream.end();
+
+        policyAssertions();
+        assertThat(metrics.getMessage()).contains("accessExternalDTD");
+    }
+
+    @Test
+    public void shouldAcceptPayloadWithinLimits() {
+        when(configuration.getMaxBodySize()).thenReturn((long) validXmlContent.length());
+        when(configuration.getMaxDepth()).thenReturn(4);
+        when(configuration.getMaxElements()).thenReturn(7);
+        when(configuration.getMaxAttributes()).thenReturn(1);
+        when(configuration.getMaxTextLength()).thenReturn(100);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        for (Buffer chunk : split(validXmlContent, 3)) {
+            readWriteStream.write(chunk);
+        }
+        readWriteStream.end();
+
+        verify(mockPolicychain, times(0)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+    }
+
+    @Test
+    public void shouldRejectInvalidResponse() {
+        when(configuration.getResponseXsdSchema()).thenReturn(xsdSchema);
+        when(configuration.getResponseSamplingRate()).thenReturn(100d);
+        policy = new XmlValidationPolicy(configuration);
+
+        ReadWriteStream readWriteStream = policy.onResponseContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(invalidXmContent);
+        readWriteStream.end();
+
+        ArgumentCaptor<PolicyResult> policyResult = ArgumentCaptor.forClass(PolicyResult.class);
+        verify(mockPolicychain).streamFailWith(policyResult.capture());
+        assertThat(policyResult.getValue().statusCode()).isEqualTo(HttpStatusCode.INTERNAL_SERVER_ERROR_500);
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.RESPONSE_ATTR_PREFIX + "failure", FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldAcceptValidResponse() {
+        when(configuration.getResponseXsdSchema()).thenReturn(xsdSchema);
+        when(configuration.getResponseSamplingRate()).thenReturn(100d);
+        policy = new XmlValidationPolicy(configuration);
+
+        ReadWriteStream readWriteStream = policy.onResponseContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(validXmlContent);
+        readWriteStream.end();
+
+        verify(mockPolicychain, never()).streamFailWith(any());
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.RESPONSE_ATTR_PREFIX + "bytes", (long) validXmlContent.length());
+    }
+
+    @Test
+    public void shouldPassThroughSampledOutResponse() {
+        when(configuration.getResponseXsdSchema()).thenReturn(xsdSchema);
+        when(configuration.getResponseSamplingRate()).thenReturn(0d);
+        policy = new XmlValidationPolicy(configuration);
+
+        assertThat(policy.onResponseContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain)).isNull();
+    }
+
+    @Test
+    public void shouldNotValidateResponseWithoutSchema() {
+        assertThat(policy.onResponseContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain)).isNull();
+    }
+
+    @Test
+    public void shouldForwardInvalidPayloadInShadowMode() throws Exception {
+        when(configuration.isShadow()).thenReturn(true);
+        long rejections = XmlValidationMetrics.getInstance().getShadowRejections();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        StringBuilder forwarded = new StringBuilder();
+        CountDownLatch ended = new CountDownLatch(1);
+        readWriteStream.bodyHandler(buffer -> forwarded.append(buffer.toString()));
+        readWriteStream.endHandler(result -> ended.countDown());
+        for (Buffer chunk : split(invalidXmContent, 3)) {
+            readWriteStream.write(chunk);
+        }
+        assertThat(forwarded.toString()).isEqualTo(invalidXmContent.toString());
+        readWriteStream.end();
+
+        assertThat(ended.getCount()).isZero();
+        verify(mockPolicychain, never()).streamFailWith(any());
+        verify(mockExecutionContext, never()).setAttribute(eq(ValidationRecorder.ATTR_FAILURE), any());
+        await(() -> XmlValidationMetrics.getInstance().getShadowRejections() > rejections);
+    }
+
+    @Test
+    public void shouldValidateAgainstSchemaMappedToRootElement() {
+        mapSchemas();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer("<o:order xmlns:o=\"urn:orders\"><o:quantity>3</o:quantity></o:order>"));
+        readWriteStream.end();
+
+        verify(mockPolicychain, never()).streamFailWith(any());
+    }
+
+    @Test
+    public void shouldValidateAgainstSchemaMappedToNamespaceInStreamingMode() {
+        mapSchemas();
+        when(configuration.isStreaming()).thenReturn(true);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        for (Buffer chunk : split(factory.buffer("<?xml version=\"1.0\"?>\n<invoice xmlns=\"urn:invoices\"><total>abc</total></invoice>"), 4)) {
+            readWriteStream.write(chunk);
+        }
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldFallBackToDefaultSchema() {
+        mapSchemas();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(validXmlContent);
+        readWriteStream.end();
+
+        verify(mockPolicychain, never()).streamFailWith(any());
+    }
+
+    @Test
+    public void shouldRejectUnmappedRootElement() {
+        when(configuration.getXsdSchema()).thenReturn(null);
+        mapSchemas();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(validXmlContent);
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldResolveImportedSchemaFromCatalog() {
+        SchemaCatalogEntry quantity = new SchemaCatalogEntry();
+        quantity.setLocation("common/quantity.xsd");
+        quantity.setXsdSchema("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:common\">" +
+                "<xs:simpleType name=\"Quantity\"><xs:restriction base=\"xs:int\"/></xs:simpleType></xs:schema>");
+        when(configuration.getSchemaCatalog()).thenReturn(Collections.singletonList(quantity));
+        when(configuration.getXsdSchema()).thenReturn("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" xmlns:c=\"urn:common\">" +
+                "<xs:import namespace=\"urn:common\" schemaLocation=\"common/quantity.xsd\"/>" +
+                "<xs:element name=\"quantity\" type=\"c:Quantity\"/></xs:schema>");
+        policy = new XmlValidationPolicy(configuration);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer("<quantity>three</quantity>"));
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldRejectImportMissingFromCatalog() {
+        SchemaCatalogEntry other = new SchemaCatalogEntry();
+        other.setNamespace("urn:other");
+        other.setXsdSchema("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:other\"/>");
+        when(configuration.getSchemaCatalog()).thenReturn(Collections.singletonList(other));
+        when(configuration.getXsdSchema()).thenReturn("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+                "<xs:import namespace=\"urn:common\" schemaLocation=\"http://localhost/quantity.xsd\"/></xs:schema>");
+
+        assertThatThrownBy(() -> new XmlValidationPolicy(configuration))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("http://localhost/quantity.xsd");
+    }
+
+    @Test
+    public void shouldRejectUndeclaredEntityInWellFormedMode() {
+        when(configuration.getValidationMode()).thenReturn(ValidationMode.WELL_FORMED);
+        policy = new XmlValidationPolicy(configuration);
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer("<root>&x;</root>"));
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.MALFORMED.name());
+    }
+
+    @Test
+    public void shouldValidateSoapBodyOnly() {
+        validateSoapBody();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        for (Buffer chunk : split(soapEnvelope("<o:quantity>3</o:quantity>"), 5)) {
+            readWriteStream.write(chunk);
+        }
+        readWriteStream.end();
+
+        verify(mockPolicychain, never()).streamFailWith(any());
+    }
+
+    @Test
+    public void shouldRejectInvalidSoapBody() {
+        validateSoapBody();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(soapEnvelope("<o:quantity>three</o:quantity>"));
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldRejectUndeclaredEntityInSoapBody() {
+        validateSoapBody();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(soapEnvelope("<o:quantity>&x;</o:quantity>"));
+        readWriteStream.end();
+
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.MALFORMED.name());
+    }
+
+    @Test
+    public void shouldRejectSoapEnvelopeWithoutBody() {
+        validateSoapBody();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer("<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\"/>"));
+        readWriteStream.end();
+
+        policyAssertions();
+    }
+
+    private void validateSoapBody() {
+        when(configuration.getFragmentPath()).thenReturn("/Envelope/Body");
+        when(configuration.getXsdSchema()).thenReturn("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:orders\">" +
+                "<xs:element name=\"quantity\" type=\"xs:int\"/></xs:schema>");
+        policy = new XmlValidationPolicy(configuration);
+    }
+
+    private Buffer soapEnvelope(String body) {
+        // The header does not match the schema, and the prefix of the body is declared on the envelope
+        return factory.buffer("<?xml version=\"1.0\"?>\n" +
+                "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:o=\"urn:orders\">" +
+                "<soap:Header><wsse:Security xmlns:wsse=\"urn:security\"><wsse:Token>abc</wsse:Token></wsse:Security></soap:Header>" +
+                "<soap:Body>" + body + "</soap:Body></soap:Envelope>");
+    }
+
+    private void mapSchemas() {
+        SchemaMapping orders = new SchemaMapping();
+        orders.setRootElement("{urn:orders}order");
+        orders.setXsdSchema("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:orders\" elementFormDefault=\"qualified\">" +
+                "<xs:element name=\"order\"><xs:complexType><xs:sequence>" +
+                "<xs:element name=\"quantity\" type=\"xs:int\"/>" +
+                "</xs:sequence></xs:complexType></xs:element></xs:schema>");
+        SchemaMapping invoices = new SchemaMapping();
+        invoices.setNamespace("urn:invoices");
+        invoices.setXsdSchema("<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:invoices\" elementFormDefault=\"qualified\">" +
+                "<xs:element name=\"invoice\"><xs:complexType><xs:sequence>" +
+                "<xs:element name=\"total\" type=\"xs:decimal\"/>" +
+                "</xs:sequence></xs:complexType></xs:element></xs:schema>");
+        when(configuration.getSchemaMappings()).thenReturn(Arrays.asList(orders, invoices));
+        policy = new XmlValidationPolicy(configuration);
+    }
+
+    @Test
+    public void shouldValidateBatchItemsAgainstTheirSchema() throws Exception {
+        when(configuration.getBatchPath()).thenReturn("/batch");
+        mapSchemas();
+        String batch = "<batch xmlns:o=\"urn:orders\"><o:order><o:quantity>1</o:quantity></o:order>" +
+                "<invoice xmlns=\"urn:invoices\"><total>2.5</total></invoice><o:order><o:quantity>3</o:quantity></o:order></batch>";
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        StringBuilder forwarded = new StringBuilder();
+        readWriteStream.bodyHandler(buffer -> forwarded.append(buffer.toString()));
+        CountDownLatch ended = new CountDownLatch(1);
+        readWriteStream.endHandler(result -> ended.countDown());
+        readWriteStream.write(factory.buffer(batch));
+        readWriteStream.end();
+
+        assertThat(ended.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(mockPolicychain, never()).streamFailWith(any());
+        assertThat(forwarded.toString()).isEqualTo(batch);
+    }
+
+    @Test
+    public void shouldReportInvalidBatchItems() {
+        when(configuration.getBatchPath()).thenReturn("/batch");
+        mapSchemas();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer("<batch xmlns:o=\"urn:orders\"><o:order><o:quantity>1</o:quantity></o:order>" +
+                "<o:order><o:quantity>abc</o:quantity></o:order></batch>"));
+        readWriteStream.end();
+
+        verify(mockPolicychain, timeout(5000)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+        policyAssertions();
+        assertThat(metrics.getMessage()).startsWith("Invalid batch items [1], item 1:");
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_BATCH_FAILURES, Collections.singletonList(1));
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldValidateGzipBatchAndForwardItCompressed() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(mockRequest.headers()).thenReturn(headers);
+        when(configuration.getBatchPath()).thenReturn("/batch");
+        mapSchemas();
+        byte[] compressed = gzip(("<batch xmlns:o=\"urn:orders\"><o:order><o:quantity>1</o:quantity></o:order>" +
+                "<invoice xmlns=\"urn:invoices\"><total>2.5</total></invoice></batch>").getBytes(StandardCharsets.UTF_8));
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        ByteArrayOutputStream forwarded = new ByteArrayOutputStream();
+        readWriteStream.bodyHandler(buffer -> forwarded.write(((Buffer) buffer).getBytes(), 0, ((Buffer) buffer).length()));
+        CountDownLatch ended = new CountDownLatch(1);
+        readWriteStream.endHandler(result -> ended.countDown());
+        for (Buffer chunk : split(factory.buffer(compressed), 5)) {
+            readWriteStream.write(chunk);
+        }
+        readWriteStream.end();
+
+        assertThat(ended.await(5, TimeUnit.SECONDS)).isTrue();
+        verify(mockPolicychain, never()).streamFailWith(any());
+        assertThat(forwarded.toByteArray()).isEqualTo(compressed);
+    }
+
+    @Test
+    public void shouldReportInvalidItemsOfGzipBatch() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(mockRequest.headers()).thenReturn(headers);
+        when(configuration.getBatchPath()).thenReturn("/batch");
+        mapSchemas();
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(factory.buffer(gzip(("<batch xmlns:o=\"urn:orders\"><o:order><o:quantity>abc</o:quantity></o:order>" +
+                "</batch>").getBytes(StandardCharsets.UTF_8))));
+        readWriteStream.end();
+
+        verify(mockPolicychain, timeout(5000)).streamFailWith(ArgumentMatchers.isA(PolicyResult.class));
+        policyAssertions();
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_BATCH_FAILURES, Collections.singletonList(0));
+        verify(mockExecutionContext).setAttribute(ValidationRecorder.ATTR_FAILURE, FailureReason.SCHEMA_INVALID.name());
+    }
+
+    @Test
+    public void shouldRejectBatchPathInStreamingMode() {
+        when(configuration.getBatchPath()).thenReturn("/batch");
+        when(configuration.isStreaming()).thenReturn(true);
+
+        assertThatThrownBy(() -> new XmlValidationPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldValidateAgainstSchemaFile() throws Exception {
+        File schemaFile = schemaDirectory.newFile("schema.xsd");
+        Files.write(schemaFile.toPath(), xsdSchema.getBytes(StandardCharsets.UTF_8));
+        when(configuration.getXsdSchemaFile()).thenReturn(schemaFile.getPath());
+
+        assertThatThrownBy(() -> new XmlValidationPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
+
+        when(configuration.getXsdSchema()).thenReturn(null);
+        assertThatThrownBy(() -> new XmlValidationPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
+
+        System.setProperty(SchemaFileWatcher.ROOT_PROPERTY, schemaDirectory.getRoot().getPath());
+        try {
+            assertThatThrownBy(() -> new XmlValidationPolicy(configuration)).isInstanceOf(IllegalArgumentException.class);
+
+            when(configuration.getXsdSchemaFile()).thenReturn("schema.xsd");
+            policy = new XmlValidationPolicy(configuration);
+        } finally {
+            System.clearProperty(SchemaFileWatcher.ROOT_PROPERTY);
+        }
+
+        ReadWriteStream readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(validXmlContent);
+        readWriteStream.end();
+        verify(mockPolicychain, never()).streamFailWith(any());
+
+        readWriteStream = policy.onRequestContent(mockRequest, mockResponse, mockExecutionContext, mockPolicychain);
+        readWriteStream.write(invalidXmContent);
+        readWriteStream.end();
+        policyAssertions();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private List<Buffer> split(Buffer content, int chunks) {
+        byte[] bytes = content.getBytes();
+        int chunkSize = (bytes.length + chunks - 1) / chunks;
+        List<Buffer> buffers = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            buffers.add(factory.buffer(Arrays.copyOfRange(bytes, offset, Math.min(bytes.length, offset + chunkSize))));
+        }
+        return buffers;
+    }
+
     private void policyAssertions() {
         assertThat(metrics.getMessage()).isNotEmpty();
         ArgumentCaptor<PolicyResult> policyResult = ArgumentCaptor.forClass(PolicyResult.class);
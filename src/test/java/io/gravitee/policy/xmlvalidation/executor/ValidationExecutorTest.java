@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.executor;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ValidationExecutorTest {
+
+    @Test
+    public void shouldResumeWithTaskResult() throws Exception {
+        ValidationExecutor executor = new ValidationExecutor("test", 1, 1);
+        CountDownLatch resumed = new CountDownLatch(1);
+        AtomicReference<String> result = new AtomicReference<>();
+
+        assertThat(executor.execute(() -> "done", (value, failure) -> {
+            result.set(value);
+            resumed.countDown();
+        })).isTrue();
+
+        assertThat(resumed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(result.get()).isEqualTo("done");
+    }
+
+    @Test
+    public void shouldResumeWithTaskFailure() throws Exception {
+        ValidationExecutor executor = new ValidationExecutor("test", 1, 1);
+        CountDownLatch resumed = new CountDownLatch(1);
+        AtomicReference<Exception> error = new AtomicReference<>();
+
+        executor.execute(() -> {
+            throw new IllegalStateException("boom");
+        }, (value, failure) -> {
+            error.set(failure);
+            resumed.countDown();
+        });
+
+        assertThat(resumed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(error.get()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldResumeWhenTaskThrowsError() throws Exception {
+        ValidationExecutor executor = new ValidationExecutor("test", 1, 1);
+        CountDownLatch resumed = new CountDownLatch(1);
+        AtomicReference<Exception> error = new AtomicReference<>();
+
+        executor.execute(() -> {
+            throw new StackOverflowError();
+        }, (value, failure) -> {
+            error.set(failure);
+            resumed.countDown();
+        });
+
+        assertThat(resumed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(error.get()).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(StackOverflowError.class);
+    }
+
+    @Test
+    public void shouldRejectTaskWhenQueueIsFull() throws Exception {
+        ValidationExecutor executor = new ValidationExecutor("test", 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            executor.execute(() -> {
+                started.countDown();
+                release.await();
+                return null;
+            }, (value, failure) -> {
+            });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(executor.execute(() -> null, (value, failure) -> {
+            })).isTrue();
+            assertThat(executor.getQueueSize()).isEqualTo(1);
+            assertThat(executor.execute(() -> null, (value, failure) -> {
+            })).isFalse();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void shouldReportSaturationWithoutResuming() throws Exception {
+        ValidationExecutor executor = new ValidationExecutor("test", 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            assertThat(executor.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            })).isTrue();
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(executor.isSaturated()).isFalse();
+
+            assertThat(executor.execute(() -> {
+            })).isTrue();
+            assertThat(executor.isSaturated()).isTrue();
+            assertThat(executor.execute(() -> {
+            })).isFalse();
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import io.gravitee.policy.xmlvalidation.executor.ValidationExecutor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class SchemaCacheTest {
+
+    private static String xsd(String rootElement) {
+        return "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+                "<xs:element name=\"" + rootElement + "\" type=\"xs:string\"/>" +
+                "</xs:schema>";
+    }
+
+    @Test
+    public void shouldCompileSchemaOnce() throws Exception {
+        SchemaCache cache = new SchemaCache(10);
+
+        CompiledSchema first = cache.get(xsd("root"));
+        CompiledSchema second = cache.get(xsd("root"));
+
+        assertThat(second).isSameAs(first);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldShareCompilationBetweenConcurrentCallers() throws Exception {
+        SchemaCache cache = new SchemaCache(10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            List<Future<CompiledSchema>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get(xsd("root"));
+                }));
+            }
+            start.countDown();
+
+            CompiledSchema expected = futures.get(0).get();
+            for (Future<CompiledSchema> future : futures) {
+                assertThat(future.get()).isSameAs(expected);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedSchema() throws Exception {
+        SchemaCache cache = new SchemaCache(2);
+
+        CompiledSchema first = cache.get(xsd("first"));
+        cache.get(xsd("second"));
+        cache.get(xsd("first"));
+        cache.get(xsd("third"));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(xsd("first"))).isSameAs(first);
+    }
+
+    @Test
+    public void shouldCacheCompilationFailure() {
+        SchemaCache cache = new SchemaCache(10);
+        SchemaLookup lookup = new SchemaLookup();
+        List<String> events = new ArrayList<>();
+
+        assertThatThrownBy(() -> cache.get("\"msg\":\"error\"}")).isInstanceOf(InvalidSchemaException.class);
+        assertThatThrownBy(() -> cache.get("\"msg\":\"error\"}", lookup)).isInstanceOf(InvalidSchemaException.class);
+        lookup.replay(new SchemaCache.Listener() {
+            @Override
+            public void hit() {
+                events.add("hit");
+            }
+
+            @Override
+            public void compiled(long micros) {
+                events.add("compiled");
+            }
+        });
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(events).containsExactly("hit");
+    }
+
+    @Test
+    public void shouldWarmUpOnce() throws Exception {
+        CompiledSchema schema = new SchemaCache(10).get(xsd("root"));
+
+        assertThat(schema.warmUp("<root>sample</root>", 3, ValidationExecutor.getInstance())).isTrue();
+        assertThat(schema.warmUp("<root>sample</root>", 3, ValidationExecutor.getInstance())).isTrue();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (schema.getValidators().getReused() < 2) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        assertThat(schema.getValidators().getCreated()).isEqualTo(1);
+        assertThat(schema.getValidators().getReused()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class SchemaCatalogTest {
+
+    private static final String ORDER_XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"" +
+            " xmlns:c=\"urn:common\">" +
+            "<xs:import namespace=\"urn:common\" schemaLocation=\"../common/common.xsd\"/>" +
+            "<xs:element name=\"order\" type=\"c:Amount\"/>" +
+            "</xs:schema>";
+
+    private static final String COMMON_XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"" +
+            " targetNamespace=\"urn:common\">" +
+            "<xs:include schemaLocation=\"types.xsd\"/>" +
+            "</xs:schema>";
+
+    private static final String TYPES_XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"" +
+            " targetNamespace=\"urn:common\">" +
+            "<xs:simpleType name=\"Amount\"><xs:restriction base=\"xs:decimal\"/></xs:simpleType>" +
+            "</xs:schema>";
+
+    private static SchemaCatalog catalog() {
+        Map<String, String> locations = new HashMap<>();
+        locations.put("common/common.xsd", COMMON_XSD);
+        locations.put("/common/types.xsd", TYPES_XSD);
+        return new SchemaCatalog(locations, Collections.emptyMap());
+    }
+
+    private static void validate(CompiledSchema schema, String payload) throws Exception {
+        schema.getSchema().newValidator().validate(new StreamSource(new StringReader(payload)));
+    }
+
+    @Test
+    public void shouldResolveImportsAndNestedIncludesFromCatalog() throws Exception {
+        CompiledSchema schema = new SchemaCache(10).get(ORDER_XSD, catalog(), null);
+
+        validate(schema, "<order>12.5</order>");
+        assertThatThrownBy(() -> validate(schema, "<order>twelve</order>")).isInstanceOf(SAXException.class);
+    }
+
+    @Test
+    public void shouldResolveImportsByNamespace() throws Exception {
+        String xsd = ORDER_XSD.replace(" schemaLocation=\"../common/common.xsd\"", "");
+        SchemaCatalog catalog = new SchemaCatalog(Collections.singletonMap("common/types.xsd", TYPES_XSD),
+                Collections.singletonMap("urn:common", COMMON_XSD.replace("types.xsd", "common/types.xsd")));
+
+        validate(new SchemaCache(10).get(xsd, catalog, null), "<order>12.5</order>");
+    }
+
+    @Test
+    public void shouldFailOnLocationMissingFromCatalog() {
+        SchemaCatalog catalog = new SchemaCatalog(Collections.singletonMap("common/common.xsd", COMMON_XSD),
+                Collections.emptyMap());
+
+        assertThatThrownBy(() -> new SchemaCache(10).get(ORDER_XSD, catalog, null))
+                .isInstanceOf(InvalidSchemaException.class)
+                .hasMessageContaining("types.xsd");
+    }
+
+    @Test
+    public void shouldShareSchemasCompiledWithEqualCatalogs() throws Exception {
+        SchemaCache cache = new SchemaCache(10);
+
+        CompiledSchema first = cache.get(ORDER_XSD, catalog(), null);
+        CompiledSchema second = cache.get(ORDER_XSD, catalog(), null);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getDigest()).isNotEqualTo(SchemaCache.digest(ORDER_XSD));
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class SchemaFileWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String xsd(String type) {
+        return "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+                "<xs:include schemaLocation=\"quantity.xsd\"/>" +
+                "<xs:element name=\"quantity\" type=\"" + type + "\"/>" +
+                "</xs:schema>";
+    }
+
+    private static void write(Path path, String content) throws Exception {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void validate(SchemaFileWatcher.WatchedSchema schema, String xml) throws Exception {
+        JaxpValidationEngine.getInstance().validate(schema.getRoute().getSchema(),
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), new ValidationErrorHandler());
+    }
+
+    private SchemaFileWatcher watcher() {
+        return new SchemaFileWatcher(folder.getRoot().toPath(), 0);
+    }
+
+    private Path bundle() throws Exception {
+        write(folder.getRoot().toPath().resolve("quantity.xsd"), "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+                "<xs:simpleType name=\"small\"><xs:restriction base=\"xs:int\"><xs:maxInclusive value=\"10\"/></xs:restriction></xs:simpleType>" +
+                "</xs:schema>");
+        Path file = folder.getRoot().toPath().resolve("schema.xsd");
+        write(file, xsd("small"));
+        return file;
+    }
+
+    @Test
+    public void shouldResolveIncludesFromSchemaDirectory() throws Exception {
+        bundle();
+        folder.newFolder("types");
+        SchemaFileWatcher watcher = watcher();
+        SchemaFileWatcher.WatchedSchema schema = watcher.watch("schema.xsd", JaxpValidationEngine.getInstance());
+
+        validate(schema, "<quantity>3</quantity>");
+        assertThatThrownBy(() -> validate(schema, "<quantity>30</quantity>")).isInstanceOf(SAXException.class);
+        assertThat(schema.getVersion()).isEqualTo(1);
+        assertThat(watcher.watch("types/../schema.xsd", JaxpValidationEngine.getInstance()))
+                .isSameAs(schema);
+    }
+
+    @Test
+    public void shouldKeepLastGoodVersion() throws Exception {
+        Path file = bundle();
+        // Not reloaded in the background meanwhile
+        SchemaFileWatcher.WatchedSchema schema = new SchemaFileWatcher(folder.getRoot().toPath(), 60000)
+                .watch("schema.xsd", JaxpValidationEngine.getInstance());
+        SchemaRouter.Route route = schema.getRoute();
+
+        write(file, "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"><xs:element name=\"quantity\" type=\"unknown\"/></xs:schema>");
+        assertThat(schema.reload()).isFalse();
+        assertThat(schema.getRoute()).isSameAs(route);
+
+        write(file, xsd("xs:int"));
+        assertThat(schema.reload()).isTrue();
+        assertThat(schema.getVersion()).isEqualTo(2);
+        validate(schema, "<quantity>30</quantity>");
+    }
+
+    @Test
+    public void shouldReloadChangedSchemaInBackground() throws Exception {
+        Path file = bundle();
+        SchemaFileWatcher.WatchedSchema schema = watcher().watch("schema.xsd", JaxpValidationEngine.getInstance());
+
+        write(file, xsd("xs:int"));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (schema.getVersion() < 2) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+        validate(schema, "<quantity>30</quantity>");
+    }
+
+    @Test
+    public void shouldRejectMissingFile() {
+        assertThatThrownBy(() -> watcher().watch("missing.xsd", JaxpValidationEngine.getInstance()))
+                .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void shouldRejectFileOutsideOfRootDirectory() throws Exception {
+        Path file = bundle();
+        SchemaFileWatcher watcher = new SchemaFileWatcher(folder.newFolder("root").toPath(), 0);
+        Files.createSymbolicLink(folder.getRoot().toPath().resolve("root/link.xsd"), file);
+
+        assertThatThrownBy(() -> watcher.watch(file.toString(), JaxpValidationEngine.getInstance()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> watcher.watch("../schema.xsd", JaxpValidationEngine.getInstance()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> watcher.watch("link.xsd", JaxpValidationEngine.getInstance()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(watcher.size()).isZero();
+    }
+
+    @Test
+    public void shouldReleaseSchemaNoLongerUsed() throws Exception {
+        bundle();
+        SchemaFileWatcher watcher = watcher();
+        watcher.watch("schema.xsd", JaxpValidationEngine.getInstance());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (watcher.size() > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            System.gc();
+            Thread.sleep(20);
+        }
+    }
+}
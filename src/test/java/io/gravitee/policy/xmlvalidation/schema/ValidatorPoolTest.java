@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
+import java.io.StringReader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class ValidatorPoolTest {
+
+    private Schema schema;
+
+    @Before
+    public void setUp() throws Exception {
+        schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(new StreamSource(new StringReader(
+                "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+                        "<xs:element name=\"root\" type=\"xs:int\"/>" +
+                        "</xs:schema>")));
+    }
+
+    @Test
+    public void shouldReuseReleasedValidator() {
+        ValidatorPool pool = new ValidatorPool(schema, 2);
+
+        Validator validator = pool.acquire();
+        assertThat(pool.getInUse()).isEqualTo(1);
+        pool.release(validator);
+
+        assertThat(pool.acquire()).isSameAs(validator);
+        assertThat(pool.getCreated()).isEqualTo(1);
+        assertThat(pool.getReused()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDiscardValidatorsAboveMaxIdle() {
+        ValidatorPool pool = new ValidatorPool(schema, 1);
+
+        Validator first = pool.acquire();
+        Validator second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+
+        assertThat(pool.getIdle()).isEqualTo(1);
+        assertThat(pool.getInUse()).isZero();
+        assertThat(pool.getDiscarded()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldValidateAfterFailedValidation() throws Exception {
+        ValidatorPool pool = new ValidatorPool(schema, 1);
+
+        Validator validator = pool.acquire();
+        assertThatThrownBy(() -> validator.validate(new StreamSource(new StringReader("<root>abc</root>"))))
+                .isInstanceOf(SAXException.class);
+        pool.release(validator);
+
+        Validator reused = pool.acquire();
+        assertThat(reused).isSameAs(validator);
+        reused.validate(new StreamSource(new StringReader("<root>12</root>")));
+    }
+}
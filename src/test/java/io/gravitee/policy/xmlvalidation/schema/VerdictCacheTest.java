@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.junit.Test;
+import org.xml.sax.SAXParseException;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class VerdictCacheTest {
+
+    @Test
+    public void shouldKeepSchemaViolationOfCachedFailure() throws Exception {
+        VerdictCache cache = new VerdictCache(10, TimeUnit.MINUTES.toNanos(1));
+        ValidationErrorHandler errorHandler = new ValidationErrorHandler();
+        try {
+            errorHandler.error(new SAXParseException("cvc-type.3.1.3: invalid value", null));
+        } catch (SAXParseException e) {
+            cache.put(JaxpValidationEngine.getInstance(), "schema", "payload", VerdictCache.Verdict.invalid(e, errorHandler));
+        }
+
+        ValidationErrorHandler replayed = new ValidationErrorHandler();
+        VerdictCache.Verdict verdict = cache.get(JaxpValidationEngine.getInstance(), "schema", "payload");
+
+        assertThat(verdict.isValid()).isFalse();
+        assertThat(verdict.failure(replayed)).hasMessage("cvc-type.3.1.3: invalid value");
+        assertThat(replayed.hasSchemaViolation()).isTrue();
+        assertThat(cache.get(JaxpValidationEngine.getInstance(), "other-schema", "payload")).isNull();
+    }
+
+    @Test
+    public void shouldEvictExpiredAndLeastRecentlyUsedVerdicts() {
+        VerdictCache expiring = new VerdictCache(10, 0);
+        expiring.put(JaxpValidationEngine.getInstance(), "schema", "payload", VerdictCache.Verdict.valid());
+        assertThat(expiring.get(JaxpValidationEngine.getInstance(), "schema", "payload")).isNull();
+        assertThat(expiring.size()).isZero();
+
+        VerdictCache bounded = new VerdictCache(2, TimeUnit.MINUTES.toNanos(1));
+        bounded.put(JaxpValidationEngine.getInstance(), "schema", "first", VerdictCache.Verdict.valid());
+        bounded.put(JaxpValidationEngine.getInstance(), "schema", "second", VerdictCache.Verdict.valid());
+        bounded.get(JaxpValidationEngine.getInstance(), "schema", "first");
+        bounded.put(JaxpValidationEngine.getInstance(), "schema", "third", VerdictCache.Verdict.valid());
+        assertThat(bounded.get(JaxpValidationEngine.getInstance(), "schema", "first")).isNotNull();
+        assertThat(bounded.get(JaxpValidationEngine.getInstance(), "schema", "second")).isNull();
+    }
+
+    @Test
+    public void shouldKeepVerdictsOfEachEngine() {
+        VerdictCache cache = new VerdictCache(10, TimeUnit.MINUTES.toNanos(1));
+
+        cache.put(JaxpValidationEngine.getInstance(), "schema", "payload", VerdictCache.Verdict.valid());
+
+        assertThat(cache.get(JaxpValidationEngine.getInstance(), "schema", "payload")).isNotNull();
+        assertThat(cache.get(WoodstoxValidationEngine.getInstance(), "schema", "payload")).isNull();
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.schema;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class WoodstoxValidationEngineTest {
+
+    private static final String ORDER_XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"" +
+            " xmlns:c=\"urn:common\">" +
+            "<xs:import namespace=\"urn:common\" schemaLocation=\"common/common.xsd\"/>" +
+            "<xs:element name=\"order\">" +
+            "<xs:complexType><xs:sequence><xs:element name=\"amount\" type=\"c:Amount\"/></xs:sequence></xs:complexType>" +
+            "</xs:element>" +
+            "</xs:schema>";
+
+    private static final String COMMON_XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"" +
+            " targetNamespace=\"urn:common\">" +
+            "<xs:include schemaLocation=\"types.xsd\"/>" +
+            "</xs:schema>";
+
+    private static final String TYPES_XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\"" +
+            " targetNamespace=\"urn:common\">" +
+            "<xs:simpleType name=\"Amount\"><xs:restriction base=\"xs:decimal\"/></xs:simpleType>" +
+            "</xs:schema>";
+
+    private final WoodstoxValidationEngine engine = new WoodstoxValidationEngine();
+
+    private void validate(CompiledSchema schema, String payload, ValidationErrorHandler errorHandler) throws Exception {
+        engine.validate(schema, new ByteArrayInputStream(payload.getBytes(StandardCharsets.UTF_8)), errorHandler);
+    }
+
+    @Test
+    public void shouldValidateWithSchemasFromCatalog() throws Exception {
+        Map<String, String> locations = new HashMap<>();
+        locations.put("common/common.xsd", COMMON_XSD);
+        locations.put("common/types.xsd", TYPES_XSD);
+        CompiledSchema schema = new SchemaCache(10).get(ORDER_XSD, new SchemaCatalog(locations, Collections.emptyMap()), null);
+        engine.prepare(schema);
+
+        validate(schema, "<order><amount>12.5</amount></order>", new ValidationErrorHandler());
+
+        ValidationErrorHandler invalid = new ValidationErrorHandler();
+        assertThatThrownBy(() -> validate(schema, "<order><amount>twelve</amount></order>", invalid))
+                .hasMessageContaining("twelve");
+        assertThat(invalid.hasSchemaViolation()).isTrue();
+
+        ValidationErrorHandler malformed = new ValidationErrorHandler();
+        assertThatThrownBy(() -> validate(schema, "<order><amount>12.5</order>", malformed));
+        assertThat(malformed.hasSchemaViolation()).isFalse();
+    }
+
+    @Test
+    public void shouldNotFetchSchemasMissingFromCatalog() {
+        // Compiled by the engine only, JAXP would refuse the schema too
+        CompiledSchema schema = new CompiledSchema("digest", ORDER_XSD.replace("common/common.xsd", "file:///etc/hosts"),
+                SchemaCatalog.EMPTY, null);
+
+        assertThatThrownBy(() -> engine.prepare(schema))
+                .isInstanceOf(InvalidSchemaException.class)
+                .hasMessageContaining("/etc/hosts");
+    }
+}
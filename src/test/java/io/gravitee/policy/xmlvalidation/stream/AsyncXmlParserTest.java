@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class AsyncXmlParserTest {
+
+    private Schema schema;
+
+    @Before
+    public void setUp() throws Exception {
+        schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(new StreamSource(new StringReader(
+                "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:test\" elementFormDefault=\"qualified\">" +
+                        "<xs:element name=\"order\">" +
+                        "<xs:complexType>" +
+                        "<xs:sequence><xs:element name=\"quantity\" type=\"xs:int\"/></xs:sequence>" +
+                        "<xs:attribute name=\"id\" type=\"xs:string\" use=\"required\"/>" +
+                        "</xs:complexType>" +
+                        "</xs:element>" +
+                        "</xs:schema>")));
+    }
+
+    @Test
+    public void shouldValidateNamespacedDocumentFedByteByByte() throws Exception {
+        AsyncXmlParser parser = new AsyncXmlParser(schema.newValidatorHandler());
+
+        byte[] bytes = "<?xml version=\"1.0\"?><t:order xmlns:t=\"urn:test\" id=\"1\"><t:quantity>3</t:quantity></t:order>"
+                .getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            parser.feed(bytes, i, 1);
+        }
+        parser.end();
+    }
+
+    @Test
+    public void shouldRejectMissingAttribute() {
+        AsyncXmlParser parser = new AsyncXmlParser(schema.newValidatorHandler());
+
+        assertThatThrownBy(() -> parser.feed("<order xmlns=\"urn:test\"><quantity>3</quantity>".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(SAXException.class);
+    }
+
+    @Test
+    public void shouldRejectInvalidValueBeforeEndOfDocument() {
+        AsyncXmlParser parser = new AsyncXmlParser(schema.newValidatorHandler());
+
+        assertThatThrownBy(() -> parser.feed("<order xmlns=\"urn:test\" id=\"1\"><quantity>three</quantity>".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(SAXException.class);
+    }
+
+    @Test
+    public void shouldDecodeLatin1Document() throws Exception {
+        AsyncXmlParser parser = new AsyncXmlParser(schema.newValidatorHandler());
+
+        parser.feed("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><order xmlns=\"urn:test\" id=\"café\"><quantity>3</quantity></order>"
+                .getBytes(StandardCharsets.ISO_8859_1));
+        parser.end();
+    }
+
+    @Test
+    public void shouldRejectEmptyDocument() {
+        AsyncXmlParser parser = new AsyncXmlParser(schema.newValidatorHandler());
+
+        assertThatThrownBy(parser::end).isInstanceOf(SAXException.class);
+    }
+
+    @Test
+    public void shouldRejectTooManyElementsWithoutHandler() {
+        AsyncXmlParser parser = new AsyncXmlParser(null, new XmlLimits(0, 3, 0, 0, false));
+
+        assertThatThrownBy(() -> parser.feed("<a><b/><b/><b/>".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(LimitExceededException.class)
+                .hasMessageContaining("Element count");
+    }
+
+    @Test
+    public void shouldRejectTooManyAttributes() {
+        AsyncXmlParser parser = new AsyncXmlParser(null, new XmlLimits(0, 0, 2, 0, false));
+
+        assertThatThrownBy(() -> parser.feed("<a x=\"1\" y=\"2\" z=\"3\">".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(LimitExceededException.class)
+                .hasMessageContaining("Attribute count");
+    }
+
+    @Test
+    public void shouldRejectTextNodeFedInSeveralChunks() throws Exception {
+        AsyncXmlParser parser = new AsyncXmlParser(null, new XmlLimits(0, 0, 0, 10, false));
+        parser.feed("<a><b>12345</b><b>123456".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> parser.feed("78901".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(LimitExceededException.class)
+                .hasMessageContaining("Text length");
+    }
+
+    @Test
+    public void shouldRejectDoctype() {
+        AsyncXmlParser parser = new AsyncXmlParser(null, new XmlLimits(0, 0, 0, 0, true));
+
+        assertThatThrownBy(() -> parser.feed("<?xml version=\"1.0\"?><!DOCTYPE order SYSTEM \"order.dtd\"><order>"
+                .getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(LimitExceededException.class)
+                .hasMessageContaining("DOCTYPE");
+    }
+
+    @Test
+    public void shouldNotExpandEntities() {
+        AsyncXmlParser parser = new AsyncXmlParser();
+
+        assertThatThrownBy(() -> parser.feed(("<?xml version=\"1.0\"?><!DOCTYPE lolz [<!ENTITY lol \"lol\">" +
+                "<!ENTITY lol2 \"&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;&lol;\">]><lolz>&lol2;</lolz>").getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(SAXException.class);
+    }
+
+    @Test
+    public void shouldRejectUndeclaredEntity() throws Exception {
+        AsyncXmlParser parser = new AsyncXmlParser(emptyRootSchema().newValidatorHandler());
+
+        assertThatThrownBy(() -> {
+            parser.feed("<root>&x;</root>".getBytes(StandardCharsets.UTF_8));
+            parser.end();
+        }).isInstanceOf(SAXParseException.class).hasMessageContaining("\"x\"");
+    }
+
+    @Test
+    public void shouldRejectEntityDeclaredInExternalDtd() throws Exception {
+        AsyncXmlParser parser = new AsyncXmlParser(emptyRootSchema().newValidatorHandler());
+
+        assertThatThrownBy(() -> {
+            parser.feed("<!DOCTYPE root SYSTEM 'http://x/x.dtd'><root>&x;</root>".getBytes(StandardCharsets.UTF_8));
+            parser.end();
+        }).isInstanceOf(SAXParseException.class).hasMessageContaining("\"x\"");
+    }
+
+    private static Schema emptyRootSchema() throws SAXException {
+        return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(new StreamSource(new StringReader(
+                "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+                        "<xs:element name=\"root\"><xs:complexType/></xs:element>" +
+                        "</xs:schema>")));
+    }
+
+    @Test
+    public void shouldRejectUnsupportedEncodingBeforeParsing() {
+        assertThatThrownBy(() -> new AsyncXmlParser().feed("<?xml version=\"1.0\" encoding=\"UTF-16\"?><a/>"
+                .getBytes(StandardCharsets.UTF_16))).isInstanceOf(UnsupportedXmlEncodingException.class);
+
+        AsyncXmlParser parser = new AsyncXmlParser();
+        byte[] bytes = "<?xml version=\"1.0\" encoding=\"windows-1252\"?><a/>".getBytes(StandardCharsets.US_ASCII);
+        assertThatThrownBy(() -> {
+            for (int i = 0; i < bytes.length; i++) {
+                parser.feed(bytes, i, 1);
+            }
+        }).isInstanceOf(UnsupportedXmlEncodingException.class).hasMessageContaining("windows-1252");
+    }
+
+    @Test
+    public void shouldParseSupportedEncodingsFedByteByByte() throws Exception {
+        for (String encoding : new String[]{"ISO-8859-1", "iso-8859-1", "US-ASCII", "utf8"}) {
+            AsyncXmlParser parser = new AsyncXmlParser();
+            byte[] bytes = ("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?><a>b</a>").getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < bytes.length; i++) {
+                parser.feed(bytes, i, 1);
+            }
+            parser.end();
+        }
+        AsyncXmlParser parser = new AsyncXmlParser();
+        parser.feed("<a/>".getBytes(StandardCharsets.US_ASCII));
+        parser.end();
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import org.junit.Test;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class BatchSplitterTest {
+
+    @Test
+    public void shouldDeclareAncestorNamespacesOnItems() throws Exception {
+        List<QName> roots = new ArrayList<>();
+        List<String> items = new ArrayList<>();
+
+        int count = BatchSplitter.split(payload("<?xml version=\"1.0\"?><b:batch xmlns:b=\"urn:batch\" xmlns=\"urn:orders\">" +
+                "<b:header/><order id=\"1\"><quantity>1</quantity></order><!-- skipped --><order id=\"2\"/></b:batch>"),
+                FragmentContentHandler.parsePath("/{urn:batch}batch"), (index, rootElement, item) -> {
+                    roots.add(rootElement);
+                    items.add(new String(item, StandardCharsets.UTF_8));
+                    return true;
+                });
+
+        assertThat(count).isEqualTo(3);
+        assertThat(roots).containsExactly(new QName("urn:batch", "header"), new QName("urn:orders", "order"),
+                new QName("urn:orders", "order"));
+        assertThat(items.get(1)).contains("xmlns:b=\"urn:batch\"").contains("xmlns=\"urn:orders\"")
+                .contains("<order").contains("id=\"1\"").contains("<quantity>1</quantity></order>");
+    }
+
+    @Test
+    public void shouldStopWhenConsumerDeclines() throws Exception {
+        int count = BatchSplitter.split(payload("<batch><item/><item/><item/></batch>"),
+                FragmentContentHandler.parsePath("/batch"), (index, rootElement, item) -> index < 1);
+
+        assertThat(count).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRejectPayloadWithoutBatchElement() {
+        assertThatThrownBy(() -> BatchSplitter.split(payload("<orders><item/></orders>"),
+                FragmentContentHandler.parsePath("/batch"), (index, rootElement, item) -> true))
+                .isInstanceOf(SAXParseException.class);
+        assertThatThrownBy(() -> BatchSplitter.split(payload("<batch><item></batch>"),
+                FragmentContentHandler.parsePath("/batch"), (index, rootElement, item) -> true))
+                .isInstanceOf(SAXParseException.class);
+    }
+
+    private static InputStream payload(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class FragmentContentHandlerTest {
+
+    @Test
+    public void shouldParsePathWithNamespaces() {
+        assertThat(FragmentContentHandler.parsePath("/{http://schemas.xmlsoap.org/soap/envelope/}Envelope/Body/{}item"))
+                .containsExactly(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Envelope"),
+                        new QName("*", "Body"), new QName("", "item"));
+    }
+
+    @Test
+    public void shouldRejectInvalidPath() {
+        assertThatThrownBy(() -> FragmentContentHandler.parsePath("/")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FragmentContentHandler.parsePath("/{urn:soap/Envelope")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class PayloadInflaterTest {
+
+    private static final String DOCUMENT = "<order><quantity>3</quantity><comment>repeated text repeated text</comment></order>";
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed)) {
+            deflate.write(content);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String inflate(String encoding, byte[] compressed, int chunkSize, int maxRatio) throws SAXException {
+        PayloadInflater inflater = PayloadInflater.of(encoding, maxRatio);
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        for (int offset = 0; offset < compressed.length; offset += chunkSize) {
+            inflater.inflate(compressed, offset, Math.min(chunkSize, compressed.length - offset), inflated::write);
+        }
+        inflater.end();
+        return new String(inflated.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldInflateGzipPayloadByteByByte() throws Exception {
+        assertThat(inflate("gzip", gzip(DOCUMENT.getBytes(StandardCharsets.UTF_8)), 1, 100)).isEqualTo(DOCUMENT);
+    }
+
+    @Test
+    public void shouldInflateDeflatePayload() throws Exception {
+        assertThat(inflate("Deflate", deflate(DOCUMENT.getBytes(StandardCharsets.UTF_8)), 7, 100)).isEqualTo(DOCUMENT);
+    }
+
+    @Test
+    public void shouldNotInflateIdentityPayload() throws Exception {
+        assertThat(PayloadInflater.of(null, 100)).isNull();
+        assertThat(PayloadInflater.of("identity", 100)).isNull();
+        assertThatThrownBy(() -> PayloadInflater.of("br", 100)).isInstanceOf(SAXException.class);
+    }
+
+    @Test
+    public void shouldRejectPayloadExceedingInflationRatio() throws Exception {
+        byte[] bomb = gzip(new byte[10 * 1024 * 1024]);
+
+        assertThatThrownBy(() -> inflate("gzip", bomb, 1024, 100))
+                .isInstanceOf(LimitExceededException.class)
+                .hasMessageContaining("100 times");
+    }
+
+    @Test
+    public void shouldRejectCorruptedGzipPayload() throws Exception {
+        byte[] compressed = gzip(DOCUMENT.getBytes(StandardCharsets.UTF_8));
+        compressed[compressed.length - 8] ^= 1;
+
+        assertThatThrownBy(() -> inflate("gzip", compressed, 16, 100)).isInstanceOf(SAXException.class);
+        assertThatThrownBy(() -> inflate("gzip", new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0, 1}, 16, 100))
+                .hasMessageContaining("Premature end");
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.stream;
+
+import io.gravitee.gateway.api.buffer.Buffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class SpillBufferTest {
+
+    @Rule
+    public TemporaryFolder directory = new TemporaryFolder();
+
+    @Test
+    public void shouldKeepPayloadBelowThresholdInMemory() {
+        SpillBuffer buffer = new SpillBuffer(10);
+        buffer.append(Buffer.buffer("<a/>"));
+        buffer.append(Buffer.buffer("<b/>"));
+
+        List<Buffer> chunks = new ArrayList<>();
+        buffer.writeTo(chunks::add);
+
+        assertThat(buffer.isSpilled()).isFalse();
+        assertThat(chunks).hasSize(1);
+        assertThat(chunks.get(0).toString()).isEqualTo("<a/><b/>");
+    }
+
+    @Test
+    public void shouldSpillPayloadAboveThresholdToFile() throws Exception {
+        System.setProperty(SpillBuffer.DIRECTORY_PROPERTY, directory.getRoot().getPath());
+        try {
+            SpillBuffer buffer = new SpillBuffer(4);
+            buffer.append(Buffer.buffer("<a>"));
+            buffer.append(Buffer.buffer("text"));
+            buffer.append(Buffer.buffer("</a>"));
+
+            assertThat(buffer.isSpilled()).isTrue();
+            assertThat(buffer.length()).isEqualTo(11);
+            assertThat(directory.getRoot().list()).hasSize(1);
+
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            try (InputStream input = buffer.inputStream()) {
+                int b;
+                while ((b = input.read()) >= 0) {
+                    read.write(b);
+                }
+            }
+            assertThat(new String(read.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("<a>text</a>");
+
+            buffer.release();
+            assertThat(directory.getRoot().list()).isEmpty();
+        } finally {
+            System.clearProperty(SpillBuffer.DIRECTORY_PROPERTY);
+        }
+    }
+
+    @Test
+    public void shouldDeleteFileOfUnreleasedBuffer() throws Exception {
+        System.setProperty(SpillBuffer.DIRECTORY_PROPERTY, directory.getRoot().getPath());
+        try {
+            // As for a request aborted before the end of its payload
+            SpillBuffer buffer = new SpillBuffer(4);
+            buffer.append(Buffer.buffer("<a>text"));
+            assertThat(directory.getRoot().list()).hasSize(1);
+            buffer = null;
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (directory.getRoot().list().length > 0) {
+                assertThat(System.currentTimeMillis()).isLessThan(deadline);
+                System.gc();
+                Thread.sleep(10);
+                SpillBuffer.reclaim();
+            }
+        } finally {
+            System.clearProperty(SpillBuffer.DIRECTORY_PROPERTY);
+        }
+    }
+}
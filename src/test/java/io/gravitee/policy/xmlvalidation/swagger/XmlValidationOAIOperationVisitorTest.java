@@ -20,22 +20,30 @@ import io.gravitee.policy.api.swagger.Policy;
 import io.swagger.v3.core.util.Json;
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.Paths;
 import io.swagger.v3.oas.models.media.Content;
 import io.swagger.v3.oas.models.media.MediaType;
+import io.swagger.v3.oas.models.media.NumberSchema;
+import io.swagger.v3.oas.models.media.ObjectSchema;
 import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.media.StringSchema;
 import io.swagger.v3.oas.models.parameters.RequestBody;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.MockedStatic;
-import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.HashMap;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -81,11 +89,8 @@ public class XmlValidationOAIOperationVisitorTest {
         when(requestBody.getContent()).thenReturn(content);
         when(content.get("application/xml")).thenReturn(applicationXml);
 
-        try(MockedStatic<Json> theMock = Mockito.mockStatic(Json.class)) {
-            theMock.when(() -> Json.pretty(any(Schema.class))).thenReturn("");
-            Optional<Policy> policy = visitor.visit(mock(OpenAPI.class), operationMock);
-            assertFalse(policy.isPresent());
-        }
+        Optional<Policy> policy = visitor.visit(mock(OpenAPI.class), operationMock);
+        assertFalse(policy.isPresent());
     }
 
     @Test
@@ -136,7 +141,7 @@ public class XmlValidationOAIOperationVisitorTest {
 
         Operation operationMock = mock(Operation.class);
 
-        Schema schema = mock(Schema.class);
+        Schema schema = Json.mapper().readValue(jsonSchema, Schema.class);
         MediaType applicationXml = mock(MediaType.class);
         Content content = mock(Content.class);
         RequestBody requestBody = mock(RequestBody.class);
@@ -145,16 +150,48 @@ public class XmlValidationOAIOperationVisitorTest {
         when(content.get("application/xml")).thenReturn(applicationXml);
         when(applicationXml.getSchema()).thenReturn(schema);
 
-        try(MockedStatic<Json> theMock = Mockito.mockStatic(Json.class)) {
-            theMock.when(() -> Json.pretty(any(Schema.class))).thenReturn(jsonSchema);
+        Optional<Policy> policy = visitor.visit(mock(OpenAPI.class), operationMock);
+        assertTrue(policy.isPresent());
 
-            Optional<Policy> policy = visitor.visit(mock(OpenAPI.class), operationMock);
-            assertTrue(policy.isPresent());
+        String configuration = policy.get().getConfiguration();
+        assertNotNull(configuration);
+        HashMap readConfig = new ObjectMapper().readValue(configuration, HashMap.class);
+        assertEquals(expectedXsdSchema.replaceAll("\\s", ""), ((String) readConfig.get("xsdSchema")).replaceAll("\\s", ""));
+    }
 
-            String configuration = policy.get().getConfiguration();
-            assertNotNull(configuration);
-            HashMap readConfig = new ObjectMapper().readValue(configuration, HashMap.class);
-            assertEquals(expectedXsdSchema.replaceAll("\\s", ""), ((String) readConfig.get("xsdSchema")).replaceAll("\\s", ""));
+    @Test
+    public void preconvertDistinctXmlRequestSchemasOnFirstOperation() throws Exception {
+        // A cache too small to hold both schemas, so that they can only be reused from the conversions of the definition
+        XsdConverter converter = spy(new XsdConverter(1, false));
+        visitor = new XmlValidationOAIOperationVisitor(converter, ForkJoinPool.commonPool());
+        Schema person = new ObjectSchema().addProperties("name", new StringSchema());
+        Schema order = new ObjectSchema().addProperties("amount", new NumberSchema());
+        Operation soapOperation = operation("application/soap+xml; charset=utf-8", person);
+        OpenAPI openAPI = new OpenAPI().paths(new Paths()
+                .addPathItem("/persons", new PathItem()
+                        .post(operation("application/xml", person))
+                        .put(operation("text/xml", person)))
+                .addPathItem("/orders", new PathItem()
+                        .post(operation("application/json", order))
+                        .put(soapOperation))
+                .addPathItem("/soap", new PathItem().post(operation("text/xml", order))));
+
+        Optional<Policy> policy = visitor.visit(openAPI, soapOperation);
+        assertTrue(policy.isPresent());
+        assertTrue(policy.get().getConfiguration().contains("name=\\\"name\\\""));
+        verify(converter, times(2)).convert(anyString());
+
+        for (PathItem path : openAPI.getPaths().values()) {
+            for (Operation operation : path.readOperations()) {
+                visitor.visit(openAPI, operation);
+            }
         }
+        verify(converter, times(2)).convert(anyString());
+        verify(converter, never()).policy(anyString());
+    }
+
+    private static Operation operation(String mediaType, Schema schema) {
+        return new Operation().requestBody(new RequestBody().content(
+                new Content().addMediaType(mediaType, new MediaType().schema(schema))));
     }
 }
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.swagger;
+
+import io.gravitee.policy.api.swagger.Policy;
+import io.swagger.models.Model;
+import io.swagger.models.ModelImpl;
+import io.swagger.models.Operation;
+import io.swagger.models.RefModel;
+import io.swagger.models.Swagger;
+import io.swagger.models.parameters.BodyParameter;
+import io.swagger.models.properties.RefProperty;
+import io.swagger.models.properties.StringProperty;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class XmlValidationSwaggerOperationVisitorTest {
+
+    private final XmlValidationSwaggerOperationVisitor visitor = new XmlValidationSwaggerOperationVisitor();
+
+    private static Swagger swagger() {
+        return new Swagger()
+                .consumes("application/xml")
+                .model("Address", new ModelImpl().type("object").property("city", new StringProperty()))
+                .model("Person", new ModelImpl().type("object")
+                        .property("name", new StringProperty())
+                        .property("address", new RefProperty("#/definitions/Address")))
+                .model("Node", new ModelImpl().type("object").property("next", new RefProperty("#/definitions/Node")));
+    }
+
+    private static Operation operation(String definition) {
+        return new Operation().parameter(new BodyParameter().name("body").schema(new RefModel(definition)));
+    }
+
+    @Test
+    public void shouldConvertBodyWithInlinedDefinitions() {
+        Swagger swagger = swagger();
+
+        Optional<Policy> policy = visitor.visit(swagger, operation("Person"));
+
+        assertThat(policy).isPresent();
+        assertThat(policy.get().getName()).isEqualTo("xml-validation");
+        assertThat(policy.get().getConfiguration()).contains("name=\\\"name\\\"", "name=\\\"city\\\"");
+        assertThat(visitor.visit(swagger, operation("Person")).get().getConfiguration())
+                .isEqualTo(policy.get().getConfiguration());
+    }
+
+    @Test
+    public void shouldIgnoreOperationsNotConsumingXml() {
+        Swagger swagger = swagger();
+        Operation json = operation("Person").consumes("application/json");
+        Operation text = operation("Person").consumes(Collections.singletonList("text/xml; charset=utf-8"));
+
+        assertThat(visitor.visit(swagger, json)).isEmpty();
+        assertThat(visitor.visit(swagger, text)).isPresent();
+        assertThat(visitor.visit(swagger, new Operation())).isEmpty();
+        assertThat(visitor.visit(swagger, operation("Node"))).isEmpty();
+    }
+
+    @Test
+    public void shouldInlineSharedDefinitionOnce() {
+        Swagger swagger = swagger()
+                .model("Couple", new ModelImpl().type("object")
+                        .property("first", new RefProperty("#/definitions/Person"))
+                        .property("second", new RefProperty("#/definitions/Person")));
+        Map<String, Model> definitions = spy(new HashMap<>(swagger.getDefinitions()));
+        swagger.setDefinitions(definitions);
+
+        assertThat(visitor.visit(swagger, operation("Couple"))).isPresent();
+        assertThat(visitor.visit(swagger, operation("Person"))).isPresent();
+
+        verify(definitions, times(1)).get("Person");
+        verify(definitions, times(1)).get("Address");
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.policy.xmlvalidation.swagger;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class XsdConverterTest {
+
+    private static final String PERSON = "{\"type\":\"object\",\"properties\":{" +
+            "\"name\":{\"type\":\"string\"},\"age\":{\"type\":\"integer\",\"format\":\"int64\"}}}";
+
+    @Test
+    public void shouldConvertEachDistinctSchemaOnce() throws Exception {
+        XsdConverter converter = new XsdConverter(10, false);
+
+        String xsdSchema = converter.convert(PERSON);
+
+        assertThat(converter.convert(PERSON)).isSameAs(xsdSchema);
+        assertThat(converter.convert(PERSON.replace("age", "size"))).isNotEqualTo(xsdSchema);
+        assertThat(converter.size()).isEqualTo(2);
+        assertThat(xsdSchema).contains("\n    <element name=\"root\" type=\"ns:rootType\"/>");
+    }
+
+    @Test
+    public void shouldWriteCompactSchemas() throws Exception {
+        String xsdSchema = new XsdConverter(10, true).convert(PERSON);
+
+        assertThat(xsdSchema).contains("<sequence><element minOccurs=\"0\" name=\"name\" type=\"string\"/>" +
+                "<element minOccurs=\"0\" name=\"age\" type=\"long\"/></sequence>");
+    }
+
+    @Test
+    public void shouldOnlyConfigureXsdSchema() throws Exception {
+        XsdConverter converter = new XsdConverter(10, true);
+
+        String xsdSchema = converter.convert(PERSON);
+
+        assertThat(converter.policy(PERSON).getConfiguration())
+                .isEqualTo("{\"xsdSchema\":\"" + xsdSchema.replace("\"", "\\\"").replace("\n", "\\n") + "\"}");
+    }
+}